@@ -0,0 +1,86 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting of diseases and HPO terms (the inner loops of a scan), normalization of disease names and rendering
+ * of the rows of the table.
+ * @author Peter Robinson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+
+    private final List<TermId> diseaseIds = new ArrayList<>();
+    private final List<String> diseaseLabels = new ArrayList<>();
+    private final List<TableRow> rows = new ArrayList<>();
+    private final TableFormatter formatter = new TableFormatter();
+    private final StringBuilder sb = new StringBuilder(128);
+    private final List<List<TermId>> observed = new ArrayList<>();
+    private final List<List<TermId>> negated = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup(CorpusState corpus) {
+        for (PhenopacketImporter importer : corpus.importAll()) {
+            diseaseIds.add(TermId.of(importer.getDiagnosis().getTerm().getId()));
+            diseaseLabels.add(importer.getDiagnosis().getTerm().getLabel());
+            observed.add(importer.getHpoTerms());
+            negated.add(importer.getNegatedHpoTerms());
+            rows.add(new TableRow(importer.getDiagnosis().getTerm().getLabel(), importer.getGene().getSymbol(),
+                    importer.getSamplename(), importer.getHpoTerms().size(), importer.getPMID()));
+        }
+    }
+
+    @Benchmark
+    public PhenopacketCounts recordPhenotypes(CorpusState corpus) {
+        PhenopacketCounts counts = new PhenopacketCounts(corpus.snapshot);
+        for (int i = 0; i < observed.size(); i++) {
+            counts.recordPhenotypes(observed.get(i), negated.get(i));
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public PhenopacketCounts recordDiagnosis(CorpusState corpus) {
+        PhenopacketCounts counts = new PhenopacketCounts(corpus.snapshot);
+        for (TermId diseaseId : diseaseIds) {
+            counts.recordDiagnosis(diseaseId);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public void convert(Blackhole bh) {
+        for (String label : diseaseLabels) {
+            bh.consume(CountPhenoP.convert(label));
+        }
+    }
+
+    @Benchmark
+    public void normalizeDiseaseName(Blackhole bh) {
+        for (String label : diseaseLabels) {
+            bh.consume(formatter.normalizeDiseaseName(label));
+        }
+    }
+
+    @Benchmark
+    public int appendLatexRow() {
+        int length = 0;
+        for (TableRow row : rows) {
+            sb.setLength(0);
+            formatter.appendLatexRow(sb, row);
+            length += sb.length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,41 @@
+package org.monarchinitiative;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the JMH benchmarks. Accepts the usual JMH command-line options, but writes the results as JSON to
+ * jmh-result.json unless another result format or file is requested (-rf, -rff), so that the results of
+ * different releases can be compared by a script.
+ * @author Peter Robinson
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+        if (! cmd.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (! cmd.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+        Runner runner = new Runner(builder.build());
+        if (cmd.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.monarchinitiative;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A synthetic corpus of JSON phenopackets in a temporary directory, together with the bundled HPO fragment.
+ * The same phenopackets are also kept in binary protobuf encoding and written to a packet bundle.
+ * The corpus is created once per benchmark trial.
+ * @author Peter Robinson
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+    @Param({"1000"})
+    public int corpusSize;
+
+    @Param({"8"})
+    public double meanTerms;
+
+    Path directory;
+    Path corpusDirectory;
+    Path hpoPath;
+    Path annotationPath;
+    HpoSnapshot snapshot;
+    TermResolver resolver;
+    List<Path> files;
+    List<byte[]> contents;
+    /** The phenopackets of {@link #contents} in binary protobuf encoding. */
+    List<byte[]> binaryContents;
+    /** The corpus as a single packet bundle. */
+    Path bundlePath;
+
+    @Setup(Level.Trial)
+    public void createCorpus() throws IOException {
+        directory = Files.createTempDirectory("countpp-bench");
+        hpoPath = SyntheticCorpus.extractResource(SyntheticCorpus.HPO_FRAGMENT, directory);
+        annotationPath = SyntheticCorpus.extractResource(SyntheticCorpus.ANNOTATION_FRAGMENT, directory);
+        snapshot = HpoSnapshot.load(hpoPath.toString(), annotationPath.toString(), null);
+        resolver = new TermResolver(snapshot);
+        corpusDirectory = directory.resolve("phenopackets");
+        files = new SyntheticCorpus(42L, meanTerms, 25, 0.2).writeJson(corpusDirectory, corpusSize);
+        contents = new ArrayList<>(files.size());
+        for (Path file : files) {
+            contents.add(Files.readAllBytes(file));
+        }
+        binaryContents = new ArrayList<>(files.size());
+        for (byte[] json : contents) {
+            binaryContents.add(PhenopacketImporter.parseJson(json).toByteArray());
+        }
+        bundlePath = directory.resolve("corpus" + PhenopacketBundle.EXTENSION);
+        PhenopacketBundle.convert(new PhenopacketDiscovery(corpusDirectory.toString()), bundlePath);
+    }
+
+    /** Parse the whole corpus into importers. */
+    List<PhenopacketImporter> importAll() {
+        List<PhenopacketImporter> importers = new ArrayList<>(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            importers.add(PhenopacketImporter.fromJson(contents.get(i), files.get(i).toString(), resolver));
+        }
+        return importers;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.monarchinitiative;
+
+import com.google.protobuf.util.JsonFormat;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.phenopackets.schema.v1.Phenopacket;
+import org.phenopackets.schema.v1.core.PhenotypicFeature;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Import of JSON and binary phenopackets and resolution of their HPO terms. {@link #jsonSimpleRoundTrip} is the way
+ * {@code PhenopacketImporter.fromJson} used to read files (parse with json-simple, serialize the tree and
+ * parse the string again with protobuf) and serves as baseline for {@link #fromJsonFile}.
+ * @author Peter Robinson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+
+    /** Phenotypic features of every phenopacket of the corpus, for the term resolution benchmark. */
+    private List<List<PhenotypicFeature>> features;
+
+    @Setup(Level.Trial)
+    public void setup(CorpusState corpus) {
+        features = new ArrayList<>();
+        for (PhenopacketImporter importer : corpus.importAll()) {
+            features.add(importer.getPhenotypicFeatureList());
+        }
+    }
+
+    @Benchmark
+    public void fromJsonFile(CorpusState corpus, Blackhole bh) {
+        for (Path file : corpus.files) {
+            bh.consume(PhenopacketImporter.fromJson(file.toString(), corpus.resolver));
+        }
+    }
+
+    @Benchmark
+    public void fromJsonBytes(CorpusState corpus, Blackhole bh) {
+        bh.consume(corpus.importAll());
+    }
+
+    @Benchmark
+    public void fromProtobufBytes(CorpusState corpus, Blackhole bh) {
+        for (int i = 0; i < corpus.binaryContents.size(); i++) {
+            bh.consume(PhenopacketImporter.fromProtobuf(corpus.binaryContents.get(i), corpus.files.get(i).toString(),
+                    corpus.resolver));
+        }
+    }
+
+    /** Read the bundle with the whole corpus and parse each message, i.e., one file instead of one per phenopacket. */
+    @Benchmark
+    public void fromBundle(CorpusState corpus, Blackhole bh) throws IOException {
+        PhenopacketBundle.read(corpus.bundlePath, Files.readAttributes(corpus.bundlePath, BasicFileAttributes.class),
+                source -> {
+                    try {
+                        bh.consume(PhenopacketImporter.fromProtobuf(source.read(), source.getPath(), corpus.resolver));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Benchmark
+    public void jsonSimpleRoundTrip(CorpusState corpus, Blackhole bh) throws IOException, ParseException {
+        for (Path file : corpus.files) {
+            try (FileReader reader = new FileReader(file.toFile())) {
+                JSONObject jsonObject = (JSONObject) new JSONParser().parse(reader);
+                Phenopacket.Builder builder = Phenopacket.newBuilder();
+                JsonFormat.parser().merge(jsonObject.toJSONString(), builder);
+                bh.consume(builder.build());
+            }
+        }
+    }
+
+    /** Observed and negated terms of every phenopacket, i.e., the work of getHpoTerms/getNegatedHpoTerms. */
+    @Benchmark
+    public void resolveHpoTerms(CorpusState corpus, Blackhole bh) {
+        for (List<PhenotypicFeature> f : features) {
+            bh.consume(corpus.resolver.resolve(f));
+        }
+    }
+}
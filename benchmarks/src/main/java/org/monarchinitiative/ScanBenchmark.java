@@ -0,0 +1,42 @@
+package org.monarchinitiative;
+
+import com.google.common.io.CharStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end scan of the synthetic corpus with {@code CountPhenoP.getStats} (the ontology is loaded once
+ * per trial, the LaTeX rows are discarded).
+ * @author Peter Robinson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+
+    /** Parser threads. */
+    @Param({"1", "4"})
+    public int threads;
+
+    /** Reader threads. */
+    @Param({"1", "2"})
+    public int ioThreads;
+
+    private CountPhenoP countPhenoP;
+
+    @Setup(Level.Trial)
+    public void setup(CorpusState corpus) {
+        countPhenoP = new CountPhenoP(corpus.hpoPath.toString(), new PhenopacketDiscovery(corpus.corpusDirectory.toString()),
+                corpus.annotationPath.toString(), threads, ioThreads, false, null, null);
+    }
+
+    @Benchmark
+    public void getStats() throws IOException {
+        countPhenoP.getStats(new LatexReportWriter(CharStreams.nullWriter()));
+    }
+}
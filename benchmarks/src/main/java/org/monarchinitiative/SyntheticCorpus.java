@@ -0,0 +1,202 @@
+package org.monarchinitiative;
+
+import com.google.protobuf.util.JsonFormat;
+import org.phenopackets.schema.v1.Phenopacket;
+import org.phenopackets.schema.v1.core.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Generates random phenopackets for the benchmarks. Terms and diseases are taken from the small HPO fragment
+ * and annotation file that are bundled with the benchmarks, so no network access or real HPO release is needed.
+ * The number of terms per phenopacket follows a Poisson distribution (at least one term, capped at a maximum),
+ * and a small fraction of the terms uses an alternative (obsolete) id. Diseases with an OMIM label that lists an
+ * abbreviation (e.g., "MARFAN SYNDROME; MFS") are sometimes labeled with the abbreviation only, so that the
+ * corpus has phenopackets with the same disease id but different labels.
+ * @author Peter Robinson
+ */
+final class SyntheticCorpus {
+    static final String HPO_FRAGMENT = "hp-fragment.obo";
+    static final String ANNOTATION_FRAGMENT = "phenotype-fragment.hpoa";
+    private static final String PHENOTYPIC_ABNORMALITY = "HP:0000118";
+    /** Probability that a term is written with its alternative id. */
+    private static final double ALT_ID_PROBABILITY = 0.02;
+    /** Probability that a disease is labeled with the abbreviation of its OMIM label. */
+    private static final double ABBREVIATION_PROBABILITY = 0.3;
+    private static final String[] ZYGOSITY = {"GENO:0000135", "GENO:0000136", "GENO:0000134"};
+
+    private final List<String> phenotypeIds = new ArrayList<>();
+    private final Map<String, String> primary2alt = new HashMap<>();
+    /** Pairs of disease id and disease label. */
+    private final List<String[]> diseases = new ArrayList<>();
+    private final Random random;
+    /** Mean number of terms per phenopacket. */
+    private final double meanTerms;
+    private final int maxTerms;
+    private final double negatedFraction;
+
+    SyntheticCorpus(long seed, double meanTerms, int maxTerms, double negatedFraction) throws IOException {
+        this.random = new Random(seed);
+        this.meanTerms = meanTerms;
+        this.maxTerms = maxTerms;
+        this.negatedFraction = negatedFraction;
+        readHpoFragment();
+        readAnnotationFragment();
+    }
+
+    /** Copy a bundled resource (e.g., {@link #HPO_FRAGMENT}) to a directory and return the path of the copy. */
+    static Path extractResource(String name, Path dir) throws IOException {
+        Path target = dir.resolve(name);
+        try (InputStream in = SyntheticCorpus.class.getResourceAsStream("/" + name)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+
+    /** Create a random phenopacket; the index is used to create unique ids. */
+    Phenopacket next(int index) {
+        String[] disease = diseases.get(random.nextInt(diseases.size()));
+        String label = disease[1];
+        int semicolon = label.indexOf(';');
+        if (semicolon > 0 && random.nextDouble() < ABBREVIATION_PROBABILITY) {
+            label = label.substring(semicolon + 1).trim();
+        }
+        int geneNumber = 1 + random.nextInt(50);
+        Phenopacket.Builder builder = Phenopacket.newBuilder()
+                .setId(String.format("PMID:%d-Author-2019-GENE%d-Family_%d", 10000000 + random.nextInt(1000), geneNumber, index))
+                .setSubject(Individual.newBuilder().setId(String.format("Family_%d_II:%d", index, 1 + random.nextInt(4))))
+                .addGenes(Gene.newBuilder().setId("HGNC:" + geneNumber).setSymbol("GENE" + geneNumber))
+                .addDiseases(Disease.newBuilder().setTerm(OntologyClass.newBuilder().setId(disease[0]).setLabel(label)));
+        List<String> terms = new ArrayList<>(phenotypeIds);
+        Collections.shuffle(terms, random);
+        int n = Math.min(Math.min(maxTerms, terms.size()), Math.max(1, poisson(meanTerms)));
+        for (String id : terms.subList(0, n)) {
+            if (primary2alt.containsKey(id) && random.nextDouble() < ALT_ID_PROBABILITY) {
+                id = primary2alt.get(id);
+            }
+            builder.addPhenotypicFeatures(PhenotypicFeature.newBuilder()
+                    .setType(OntologyClass.newBuilder().setId(id))
+                    .setNegated(random.nextDouble() < negatedFraction));
+        }
+        int nVariants = 1 + random.nextInt(2);
+        for (int i = 0; i < nVariants; i++) {
+            builder.addVariants(Variant.newBuilder()
+                    .setZygosity(OntologyClass.newBuilder().setId(ZYGOSITY[random.nextInt(ZYGOSITY.length)])));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Write {@code size} random phenopackets as JSON files to the directory.
+     * @return the paths of the new files
+     */
+    List<Path> writeJson(Path dir, int size) throws IOException {
+        Files.createDirectories(dir);
+        JsonFormat.Printer printer = JsonFormat.printer();
+        List<Path> paths = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Path path = dir.resolve(String.format("phenopacket-%07d.json", i));
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                printer.appendTo(next(i), writer);
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    private int poisson(double mean) {
+        double l = Math.exp(-mean);
+        int k = 0;
+        double p = 1.0;
+        do {
+            k++;
+            p *= random.nextDouble();
+        } while (p > l);
+        return k - 1;
+    }
+
+    /** Collect the descendants of Phenotypic abnormality and their alternative ids from the bundled fragment. */
+    private void readHpoFragment() throws IOException {
+        Map<String, List<String>> parents = new HashMap<>();
+        String current = null;
+        try (BufferedReader reader = resourceReader(HPO_FRAGMENT)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("id: ")) {
+                    current = line.substring(4).trim();
+                    parents.put(current, new ArrayList<>());
+                } else if (line.startsWith("alt_id: ") && current != null) {
+                    primary2alt.put(current, line.substring(8).trim());
+                } else if (line.startsWith("is_a: ") && current != null) {
+                    parents.get(current).add(line.substring(6).split(" ")[0]);
+                }
+            }
+        }
+        for (String id : parents.keySet()) {
+            if (hasAncestor(id, PHENOTYPIC_ABNORMALITY, parents)) {
+                phenotypeIds.add(id);
+            }
+        }
+        Collections.sort(phenotypeIds);
+    }
+
+    private static boolean hasAncestor(String id, String ancestor, Map<String, List<String>> parents) {
+        for (String parent : parents.getOrDefault(id, Collections.emptyList())) {
+            if (parent.equals(ancestor) || hasAncestor(parent, ancestor, parents)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void readAnnotationFragment() throws IOException {
+        Set<String> seen = new HashSet<>();
+        try (BufferedReader reader = resourceReader(ANNOTATION_FRAGMENT)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.startsWith("DatabaseID")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (seen.add(fields[0])) {
+                    diseases.add(new String[]{fields[0], fields[1]});
+                }
+            }
+        }
+    }
+
+    private static BufferedReader resourceReader(String name) {
+        return new BufferedReader(new InputStreamReader(SyntheticCorpus.class.getResourceAsStream("/" + name),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write a synthetic corpus together with the HPO fragment, e.g., to run countpp on it.
+     * Arguments: output directory, number of phenopackets, mean number of terms [default 8], maximum number
+     * of terms [default 25], fraction of negated terms [default 0.2], random seed [default 42].
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticCorpus <outdir> <size> [meanTerms] [maxTerms] [negatedFraction] [seed]");
+            System.exit(1);
+        }
+        Path dir = Paths.get(args[0]);
+        int size = Integer.parseInt(args[1]);
+        double meanTerms = args.length > 2 ? Double.parseDouble(args[2]) : 8.0;
+        int maxTerms = args.length > 3 ? Integer.parseInt(args[3]) : 25;
+        double negatedFraction = args.length > 4 ? Double.parseDouble(args[4]) : 0.2;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42L;
+        SyntheticCorpus corpus = new SyntheticCorpus(seed, meanTerms, maxTerms, negatedFraction);
+        Files.createDirectories(dir);
+        extractResource(HPO_FRAGMENT, dir);
+        extractResource(ANNOTATION_FRAGMENT, dir);
+        corpus.writeJson(dir.resolve("phenopackets"), size);
+        System.out.printf("Wrote %d phenopackets to %s\n", size, dir.resolve("phenopackets"));
+    }
+}
@@ -0,0 +1,142 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Precomputed ancestor closure of the HPO over the dense indices of a {@link TermIndex}: for each term, the
+ * sorted indices of the term itself and of all of its ancestors, stored in one array (compressed sparse rows).
+ * An alternative id has the ancestors of its primary term. With this index, the terms of a phenopacket are
+ * rolled up to all ancestors by setting bits in a bitset (see {@link #addAncestors(int, long[])}), without
+ * traversing the ontology for each phenopacket. The index is immutable and shared by all threads. It is computed
+ * once when the {@link HpoSnapshot} is built and stored in the snapshot file (see {@link #write}, {@link #read}).
+ * @author Peter Robinson
+ */
+final class AncestorIndex {
+    private final TermIndex index;
+    /** The ancestors of term i are ancestors[offsets[i]] .. ancestors[offsets[i + 1] - 1]. */
+    private final int[] offsets;
+    private final int[] ancestors;
+
+    /**
+     * @param index dense index of all term ids
+     * @param id2primary primary id of each term id
+     * @param parents direct (is_a) parents of the primary terms
+     */
+    AncestorIndex(TermIndex index, Map<TermId, TermId> id2primary, Map<TermId, List<TermId>> parents) {
+        this.index = index;
+        int n = index.size();
+        int[][] closure = new int[n][];
+        for (int i = 0; i < n; i++) {
+            closure(i, index, id2primary, parents, closure);
+        }
+        this.offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] = offsets[i] + closure[i].length;
+        }
+        this.ancestors = new int[offsets[n]];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(closure[i], 0, ancestors, offsets[i], closure[i].length);
+        }
+    }
+
+    private AncestorIndex(TermIndex index, int[] offsets, int[] ancestors) {
+        this.index = index;
+        this.offsets = offsets;
+        this.ancestors = ancestors;
+    }
+
+    /** Write the closure as two int arrays (offsets and ancestors), each preceded by its length. */
+    void write(DataOutputStream out) throws IOException {
+        for (int[] array : new int[][]{offsets, ancestors}) {
+            out.writeInt(array.length);
+            for (int v : array) {
+                out.writeInt(v);
+            }
+        }
+    }
+
+    /**
+     * Read a closure that was written by {@link #write} for the same term index.
+     * @throws IllegalArgumentException if the closure does not match the index
+     */
+    static AncestorIndex read(TermIndex index, ByteBuffer buffer) {
+        int[] offsets = readInts(buffer);
+        int[] ancestors = readInts(buffer);
+        if (offsets.length != index.size() + 1 || offsets[0] != 0 || offsets[index.size()] != ancestors.length) {
+            throw new IllegalArgumentException("ancestor closure does not match the term index");
+        }
+        return new AncestorIndex(index, offsets, ancestors);
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] array = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + Integer.BYTES * array.length);
+        return array;
+    }
+
+    /** Compute (and memoize) the sorted closure of term i. */
+    private static int[] closure(int i, TermIndex index, Map<TermId, TermId> id2primary,
+                                 Map<TermId, List<TermId>> parents, int[][] closure) {
+        if (closure[i] != null) {
+            return closure[i];
+        }
+        TermId tid = index.termId(i);
+        TermId primary = id2primary.getOrDefault(tid, tid);
+        int p = index.indexOf(primary);
+        if (p >= 0 && p != i) {
+            closure[i] = closure(p, index, id2primary, parents, closure);
+            return closure[i];
+        }
+        closure[i] = new int[]{i}; // guards against cycles
+        SortedSet<Integer> set = new TreeSet<>();
+        set.add(i);
+        for (TermId parent : parents.getOrDefault(tid, Collections.emptyList())) {
+            int j = index.indexOf(parent);
+            if (j >= 0) {
+                for (int a : closure(j, index, id2primary, parents, closure)) {
+                    set.add(a);
+                }
+            }
+        }
+        int[] result = new int[set.size()];
+        int k = 0;
+        for (int a : set) {
+            result[k++] = a;
+        }
+        closure[i] = result;
+        return result;
+    }
+
+    TermIndex getTermIndex() {
+        return index;
+    }
+
+    /** @return number of words of a bitset over all terms of the index */
+    int bitsetWords() {
+        return (index.size() + 63) >>> 6;
+    }
+
+    /** Set the bits of term i and all of its ancestors. */
+    void addAncestors(int i, long[] bits) {
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+            int a = ancestors[k];
+            bits[a >>> 6] |= 1L << a;
+        }
+    }
+
+    /** @return true if term a is term i itself or one of its ancestors */
+    boolean hasAncestor(int i, int a) {
+        return Arrays.binarySearch(ancestors, offsets[i], offsets[i + 1], a) >= 0;
+    }
+
+    /** @return the indices of term i and all of its ancestors */
+    int[] getAncestors(int i) {
+        return Arrays.copyOfRange(ancestors, offsets[i], offsets[i + 1]);
+    }
+}
@@ -0,0 +1,164 @@
+package org.monarchinitiative;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes rows to one or more {@link ReportWriter}s on a dedicated writer thread, so that formatting and
+ * disk I/O of the output do not hold up the scan. Rows are collected in batches, and the batches are handed
+ * over through a bounded queue; if the writer thread falls behind, the producer blocks.
+ * An exception of a delegate is rethrown to the producer by the next call (at the latest by {@link #close()}).
+ * @author Peter Robinson
+ */
+final class AsyncReportWriter implements ReportWriter {
+    /** Number of rows that are passed to the writer thread at once. */
+    private static final int BATCH_SIZE = 256;
+    /** Maximum number of batches waiting for the writer thread. */
+    private static final int QUEUE_CAPACITY = 16;
+    /** Marks the end of the stream of batches. */
+    private static final List<Object> END = new ArrayList<>();
+
+    private final List<ReportWriter> delegates;
+    private final BlockingQueue<List<Object>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private List<Object> batch = new ArrayList<>(BATCH_SIZE);
+    private volatile IOException failure;
+
+    AsyncReportWriter(List<ReportWriter> delegates) {
+        this.delegates = delegates;
+        this.thread = new Thread(this::run, "report-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void writeHeader() throws IOException {
+        // the header is always written before any row, so there is no need to go through the queue
+        checkFailure();
+        for (ReportWriter delegate : delegates) {
+            delegate.writeHeader();
+        }
+    }
+
+    @Override
+    public void writeRow(TableRow row) throws IOException {
+        add(row);
+    }
+
+    @Override
+    public void writeSummary(CountSummary summary) throws IOException {
+        add(summary);
+    }
+
+    private void add(Object item) throws IOException {
+        batch.add(item);
+        if (batch.size() == BATCH_SIZE) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        checkFailure();
+        if (batch.isEmpty()) {
+            return;
+        }
+        put(batch);
+        batch = new ArrayList<>(BATCH_SIZE);
+    }
+
+    private void put(List<Object> items) throws IOException {
+        try {
+            queue.put(items);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the report writer");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                List<Object> items = queue.take();
+                if (items == END) {
+                    return;
+                }
+                if (failure != null) {
+                    continue; // drain the queue so that the producer does not block
+                }
+                try {
+                    write(items);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (UncheckedIOException e) {
+                    failure = e.getCause();
+                } catch (RuntimeException e) {
+                    failure = new IOException(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(List<Object> items) throws IOException {
+        for (Object item : items) {
+            for (ReportWriter delegate : delegates) {
+                if (item instanceof TableRow) {
+                    delegate.writeRow((TableRow) item);
+                } else {
+                    delegate.writeSummary((CountSummary) item);
+                }
+            }
+        }
+    }
+
+    /** Write the remaining rows, wait for the writer thread and close all delegates. */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        try {
+            flushBatch();
+        } catch (IOException e) {
+            exception = e;
+        }
+        try {
+            // the writer thread only stops at END, unless it was interrupted; do not wait for it in that case
+            while (! queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                if (! thread.isAlive()) {
+                    break;
+                }
+            }
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the report writer");
+        }
+        for (ReportWriter delegate : delegates) {
+            try {
+                delegate.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+        if (exception == null) {
+            exception = failure;
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
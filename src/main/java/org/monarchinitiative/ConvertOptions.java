@@ -0,0 +1,40 @@
+package org.monarchinitiative;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Options of the {@code convert} command, which writes the phenopackets of a directory to a
+ * {@link PhenopacketBundle}.
+ * @author Peter Robinson
+ */
+@Parameters(commandNames = ConvertOptions.COMMAND, commandDescription = "convert a directory of phenopackets into a packet bundle")
+class ConvertOptions {
+    static final String COMMAND = "convert";
+
+    @Parameter(names = {"-h", "--help"}, help = true, description = "display this help message")
+    boolean help;
+
+    @Parameter(names = {"-p", "--phenopackets"}, required = true, description = "directory with phenopackets")
+    String phenopacketDirectory;
+
+    @Parameter(names = {"-o", "--out"}, required = true, description = "path of the bundle (.ppb)")
+    String bundlePath;
+
+    @Parameter(names = {"-r", "--recursive"}, description = "also search the subdirectories of the phenopacket directory")
+    boolean recursive;
+
+    /** Bundles are not included by default, so that an existing output file is not added to itself. */
+    @Parameter(names = {"--include"}, description = "glob for phenopacket files (file name or relative path), may be repeated [default: *.json, *.json.gz, *.pb, *.pb.gz]")
+    List<String> includes = new ArrayList<>(Arrays.asList("*.json", "*.json.gz", "*.pb", "*.pb.gz"));
+
+    @Parameter(names = {"--exclude"}, description = "glob for files and directories to skip, may be repeated")
+    List<String> excludes = new ArrayList<>();
+
+    @Parameter(names = {"--archives"}, description = "read phenopackets from zip and tar(.gz) archives in place")
+    boolean archives;
+}
@@ -0,0 +1,618 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * In-memory columnar index of a phenopacket corpus for count queries and ad-hoc aggregation without parsing the
+ * phenopackets again. Each phenopacket is a row with the dense ids of its disease, gene, publication (PMID) and
+ * sample, and, in compressed sparse row form, the indices of its observed and excluded terms in the HPO term
+ * index and the {@link Zygosity} codes of its variants. Phenopackets can be added and removed while the index is
+ * in use; removed rows are marked as deleted and dropped when the index is compacted.
+ * <p>
+ * The index can be saved to a file and loaded again; the term indices are only valid for the same version of the
+ * ontology, so a file that was written with other ontology files is rejected.
+ * All methods are synchronized, so the index can be shared by the threads of a {@link CountServer}.
+ * @author Peter Robinson
+ */
+final class CorpusIndex {
+    /** First bytes of every index file ("CPPI"). */
+    private static final int MAGIC = 0x43505049;
+    /** Increment whenever the layout of the index file changes. */
+    private static final int FORMAT_VERSION = 1;
+    /** The rows are compacted when more than this many of them have been removed (and more than are live). */
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    private final HpoSnapshot ontology;
+    private final TermIndex termIndex;
+    private final AncestorIndex ancestorIndex;
+
+    private final Dictionary<TermId> diseases = new Dictionary<>();
+    private final Dictionary<String> genes = new Dictionary<>();
+    /** Gene symbols by dense gene id. */
+    private final List<String> geneSymbols = new ArrayList<>();
+    private final Dictionary<String> pmids = new Dictionary<>();
+    private final Dictionary<String> samples = new Dictionary<>();
+
+    private List<String> paths = new ArrayList<>();
+    private Map<String, Integer> rowByPath = new HashMap<>();
+    private IntColumn diseaseColumn = new IntColumn();
+    private IntColumn geneColumn = new IntColumn();
+    private IntColumn pmidColumn = new IntColumn();
+    private IntColumn sampleColumn = new IntColumn();
+    private SparseColumn observed = new SparseColumn();
+    private SparseColumn excluded = new SparseColumn();
+    /** {@link Zygosity#ordinal()} of each variant. */
+    private SparseColumn zygosity = new SparseColumn();
+    private BitSet removed = new BitSet();
+    private int nRemoved = 0;
+
+    /** Dense ids for the distinct values of a column. */
+    private static final class Dictionary<T> {
+        private final Map<T, Integer> ids = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+
+        int getOrAdd(T value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        /** @return the id of the value, or -1 if the value does not occur in the corpus */
+        int find(T value) {
+            return ids.getOrDefault(value, -1);
+        }
+
+        T get(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /** Column with a variable number of values per row, in compressed sparse row form. */
+    private static final class SparseColumn {
+        private final IntColumn offsets;
+        private final IntColumn values;
+
+        SparseColumn() {
+            this(new IntColumn(), new IntColumn());
+            offsets.add(0);
+        }
+
+        private SparseColumn(IntColumn offsets, IntColumn values) {
+            this.offsets = offsets;
+            this.values = values;
+        }
+
+        int start(int r) {
+            return offsets.get(r);
+        }
+
+        int end(int r) {
+            return offsets.get(r + 1);
+        }
+
+        int get(int k) {
+            return values.get(k);
+        }
+
+        void add(int value) {
+            values.add(value);
+        }
+
+        /** Close the current row. */
+        void endRow() {
+            offsets.add(values.size());
+        }
+
+        void copyRow(SparseColumn from, int r) {
+            for (int k = from.start(r); k < from.end(r); k++) {
+                values.add(from.get(k));
+            }
+            endRow();
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeInts(out, offsets);
+            writeInts(out, values);
+        }
+
+        static SparseColumn read(DataInputStream in) throws IOException {
+            return new SparseColumn(readInts(in), readInts(in));
+        }
+    }
+
+    /**
+     * Filter of a query; {@code null} fields match all phenopackets. The term matches phenopackets with the term
+     * itself or one of its descendants; the gene may be given as id or symbol.
+     */
+    static final class Query {
+        TermId diseaseId;
+        String gene;
+        TermId termId;
+        InheritanceCategory inheritance;
+
+        /** @param parameters query parameters "disease", "gene", "term" and "inheritance" (all optional) */
+        static Query of(Map<String, String> parameters) {
+            Query query = new Query();
+            if (parameters.get("disease") != null) {
+                query.diseaseId = TermId.of(parameters.get("disease"));
+            }
+            query.gene = parameters.get("gene");
+            if (parameters.get("term") != null) {
+                query.termId = TermId.of(parameters.get("term"));
+            }
+            String inheritance = parameters.get("inheritance");
+            if (inheritance != null) {
+                for (InheritanceCategory category : InheritanceCategory.values()) {
+                    if (category.getKey().equalsIgnoreCase(inheritance)
+                            || category.name().equalsIgnoreCase(inheritance)) {
+                        query.inheritance = category;
+                    }
+                }
+                if (query.inheritance == null) {
+                    throw new PhenolRuntimeException("Unknown inheritance category " + inheritance);
+                }
+            }
+            return query;
+        }
+    }
+
+    CorpusIndex(HpoSnapshot ontology) {
+        this.ontology = ontology;
+        this.termIndex = ontology.getHpoTermIndex();
+        this.ancestorIndex = ontology.getAncestorIndex();
+    }
+
+    CorpusIndex(HpoSnapshot ontology, Collection<PhenopacketRecord> records) {
+        this(ontology);
+        for (PhenopacketRecord record : records) {
+            add(record);
+        }
+    }
+
+    /** Add a phenopacket; a phenopacket with the same path is replaced. */
+    synchronized void add(PhenopacketRecord record) {
+        remove(record.getPath());
+        rowByPath.put(record.getPath(), paths.size());
+        paths.add(record.getPath());
+        diseaseColumn.add(diseases.getOrAdd(record.getDiseaseId()));
+        int gene = genes.getOrAdd(record.getGeneId());
+        if (gene == geneSymbols.size()) {
+            geneSymbols.add(record.getRow().getGeneSymbol());
+        }
+        geneColumn.add(gene);
+        pmidColumn.add(pmids.getOrAdd(record.getRow().getPmid()));
+        sampleColumn.add(samples.getOrAdd(record.getRow().getSampleName()));
+        addTerms(observed, record.getTermIds());
+        addTerms(excluded, record.getNegatedTermIds());
+        for (String genoId : record.getZygosity()) {
+            zygosity.add(Zygosity.of(genoId).ordinal());
+        }
+        zygosity.endRow();
+    }
+
+    private void addTerms(SparseColumn column, List<TermId> tids) {
+        for (TermId tid : tids) {
+            int t = termIndex.indexOf(tid);
+            if (t >= 0) {
+                column.add(t);
+            }
+        }
+        column.endRow();
+    }
+
+    /** @return true if the index contained a phenopacket with this path */
+    synchronized boolean remove(String path) {
+        Integer row = rowByPath.remove(path);
+        if (row == null) {
+            return false;
+        }
+        removed.set(row);
+        nRemoved++;
+        if (nRemoved > COMPACT_THRESHOLD && nRemoved > rowByPath.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    /** @return number of phenopackets in the index */
+    synchronized int size() {
+        return rowByPath.size();
+    }
+
+    /** Rebuild the columns without the removed rows. */
+    private void compact() {
+        int n = rowByPath.size();
+        List<String> newPaths = new ArrayList<>(n);
+        Map<String, Integer> newRowByPath = new HashMap<>();
+        IntColumn newDiseases = new IntColumn(n);
+        IntColumn newGenes = new IntColumn(n);
+        IntColumn newPmids = new IntColumn(n);
+        IntColumn newSamples = new IntColumn(n);
+        SparseColumn newObserved = new SparseColumn();
+        SparseColumn newExcluded = new SparseColumn();
+        SparseColumn newZygosity = new SparseColumn();
+        for (int r = 0; r < paths.size(); r++) {
+            if (removed.get(r)) {
+                continue;
+            }
+            newRowByPath.put(paths.get(r), newPaths.size());
+            newPaths.add(paths.get(r));
+            newDiseases.add(diseaseColumn.get(r));
+            newGenes.add(geneColumn.get(r));
+            newPmids.add(pmidColumn.get(r));
+            newSamples.add(sampleColumn.get(r));
+            newObserved.copyRow(observed, r);
+            newExcluded.copyRow(excluded, r);
+            newZygosity.copyRow(zygosity, r);
+        }
+        this.paths = newPaths;
+        this.rowByPath = newRowByPath;
+        this.diseaseColumn = newDiseases;
+        this.geneColumn = newGenes;
+        this.pmidColumn = newPmids;
+        this.sampleColumn = newSamples;
+        this.observed = newObserved;
+        this.excluded = newExcluded;
+        this.zygosity = newZygosity;
+        this.removed = new BitSet();
+        this.nRemoved = 0;
+    }
+
+    /** @return the rows that match the query, as a bitset over the row numbers */
+    private BitSet select(Query query) {
+        BitSet rows = new BitSet(paths.size());
+        int disease = query.diseaseId == null ? -2 : diseases.find(query.diseaseId);
+        int gene = query.gene == null ? -2 : findGene(query.gene);
+        int term = -2;
+        if (query.termId != null) {
+            TermId primary = ontology.getPrimaryTermId(query.termId);
+            term = primary == null ? -1 : termIndex.indexOf(primary);
+        }
+        if (disease == -1 || gene == -1 || term == -1) {
+            return rows; // a value that does not occur in the corpus
+        }
+        for (int r = 0; r < paths.size(); r++) {
+            if (removed.get(r)
+                    || (disease >= 0 && diseaseColumn.get(r) != disease)
+                    || (gene >= 0 && geneColumn.get(r) != gene)
+                    || (query.inheritance != null && ontology.getInheritanceCategory(
+                            diseases.get(diseaseColumn.get(r))) != query.inheritance)
+                    || (term >= 0 && ! hasTerm(r, term))) {
+                continue;
+            }
+            rows.set(r);
+        }
+        return rows;
+    }
+
+    private int findGene(String gene) {
+        int id = genes.find(gene);
+        return id >= 0 ? id : geneSymbols.indexOf(gene);
+    }
+
+    /** @return true if row r has the observed term or one of its descendants */
+    private boolean hasTerm(int r, int term) {
+        for (int k = observed.start(r); k < observed.end(r); k++) {
+            if (ancestorIndex.hasAncestor(observed.get(k), term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return number of matching phenopackets and of their distinct diseases, genes, publications and samples */
+    synchronized Map<String, Object> count(Query query) {
+        BitSet rows = select(query);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("phenopackets", rows.cardinality());
+        result.put("diseases", distinct(rows, diseaseColumn, diseases.size()));
+        result.put("genes", distinct(rows, geneColumn, genes.size()));
+        result.put("publications", distinct(rows, pmidColumn, pmids.size()));
+        result.put("samples", distinct(rows, sampleColumn, samples.size()));
+        return result;
+    }
+
+    private static int distinct(BitSet rows, IntColumn column, int nValues) {
+        BitSet values = new BitSet(nValues);
+        for (int r = rows.nextSetBit(0); r >= 0; r = rows.nextSetBit(r + 1)) {
+            values.set(column.get(r));
+        }
+        return values.cardinality();
+    }
+
+    /**
+     * Number of matching phenopackets per disease, gene, publication or inheritance category, sorted by decreasing
+     * count.
+     * @param field one of "disease", "gene", "pmid" and "inheritance"
+     */
+    synchronized List<Map<String, Object>> groupBy(String field, Query query) {
+        IntColumn column;
+        IntUnaryOperator key = id -> id;
+        int nValues;
+        switch (field) {
+            case "disease":
+                column = diseaseColumn;
+                nValues = diseases.size();
+                break;
+            case "gene":
+                column = geneColumn;
+                nValues = genes.size();
+                break;
+            case "pmid":
+                column = pmidColumn;
+                nValues = pmids.size();
+                break;
+            case "inheritance":
+                column = diseaseColumn;
+                key = id -> ontology.getInheritanceCategory(diseases.get(id)).ordinal();
+                nValues = InheritanceCategory.values().length;
+                break;
+            default:
+                throw new PhenolRuntimeException("Cannot group by '" + field + "'");
+        }
+        BitSet rows = select(query);
+        int[] counts = new int[nValues];
+        for (int r = rows.nextSetBit(0); r >= 0; r = rows.nextSetBit(r + 1)) {
+            counts[key.applyAsInt(column.get(r))]++;
+        }
+        List<Map<String, Object>> groups = new ArrayList<>();
+        for (int id = 0; id < nValues; id++) {
+            if (counts[id] == 0) {
+                continue;
+            }
+            Map<String, Object> group = new LinkedHashMap<>();
+            switch (field) {
+                case "disease":
+                    TermId diseaseId = diseases.get(id);
+                    group.put("key", diseaseId.getValue());
+                    group.put("label", ontology.getDiseaseMap().containsKey(diseaseId)
+                            ? ontology.getDiseaseMap().get(diseaseId).getName() : diseaseId.getValue());
+                    break;
+                case "gene":
+                    group.put("key", genes.get(id));
+                    group.put("label", geneSymbols.get(id));
+                    break;
+                case "pmid":
+                    group.put("key", pmids.get(id));
+                    break;
+                default:
+                    group.put("key", InheritanceCategory.values()[id].getKey());
+            }
+            group.put("phenopackets", counts[id]);
+            groups.add(group);
+        }
+        groups.sort(Comparator.comparingInt((Map<String, Object> g) -> -(Integer) g.get("phenopackets"))
+                .thenComparing(g -> (String) g.get("key")));
+        return groups;
+    }
+
+    /**
+     * @return the most frequent terms of the matching phenopackets, counted with their ancestors (each
+     * phenopacket counts at most once per term), sorted by decreasing count, with the number of phenopackets
+     * that exclude the term itself
+     */
+    synchronized List<Map<String, Object>> termFrequencies(Query query, int limit) {
+        BitSet rows = select(query);
+        int[] counts = new int[termIndex.size()];
+        int[] excludedCounts = new int[termIndex.size()];
+        long[] bits = new long[ancestorIndex.bitsetWords()];
+        for (int r = rows.nextSetBit(0); r >= 0; r = rows.nextSetBit(r + 1)) {
+            for (int k = observed.start(r); k < observed.end(r); k++) {
+                ancestorIndex.addAncestors(observed.get(k), bits);
+            }
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                while (word != 0L) {
+                    counts[(w << 6) + Long.numberOfTrailingZeros(word)]++;
+                    word &= word - 1;
+                }
+                bits[w] = 0L;
+            }
+            for (int k = excluded.start(r); k < excluded.end(r); k++) {
+                excludedCounts[excluded.get(k)]++;
+            }
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int t = 0; t < counts.length; t++) {
+            if (counts[t] > 0) {
+                order.add(t);
+            }
+        }
+        order.sort(Comparator.comparingInt((Integer t) -> -counts[t])
+                .thenComparing(t -> termIndex.termId(t).getValue()));
+        List<Map<String, Object>> result = new ArrayList<>();
+        int n = Math.max(1, rows.cardinality());
+        for (int t : order.subList(0, Math.min(limit, order.size()))) {
+            TermId tid = termIndex.termId(t);
+            Map<String, Object> term = new LinkedHashMap<>();
+            term.put("id", tid.getValue());
+            term.put("label", ontology.getTermLabel(tid));
+            term.put("count", counts[t]);
+            term.put("fraction", (double) counts[t] / n);
+            term.put("excluded", excludedCounts[t]);
+            result.add(term);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of variants per zygosity and the number of pathogenic alleles (see
+     * {@link CountPhenoP#getPathogenicAlleleCount}) of the matching phenopackets; phenopackets with a variant of
+     * unknown zygosity are counted separately and do not contribute alleles
+     */
+    synchronized Map<String, Object> alleleCounts(Query query) {
+        BitSet rows = select(query);
+        int[] variants = new int[Zygosity.values().length];
+        long alleles = 0;
+        int unknown = 0;
+        Zygosity[] codes = Zygosity.values();
+        List<Zygosity> packet = new ArrayList<>();
+        for (int r = rows.nextSetBit(0); r >= 0; r = rows.nextSetBit(r + 1)) {
+            packet.clear();
+            for (int k = zygosity.start(r); k < zygosity.end(r); k++) {
+                variants[zygosity.get(k)]++;
+                packet.add(codes[zygosity.get(k)]);
+            }
+            if (packet.contains(Zygosity.OTHER)) {
+                unknown++;
+            } else {
+                alleles += CountPhenoP.getPathogenicAlleleCount(packet);
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Zygosity z : codes) {
+            result.put(z.name().toLowerCase(Locale.ROOT), variants[z.ordinal()]);
+        }
+        result.put("pathogenicAlleles", alleles);
+        result.put("phenopacketsWithUnknownZygosity", unknown);
+        return result;
+    }
+
+    /*
+     * Layout of the index file (all numbers big-endian):
+     * int magic, int version, string content hash of the ontology,
+     * string arrays of the disease ids, gene ids, gene symbols, PMIDs, sample names and paths,
+     * int arrays of the disease, gene, PMID and sample columns,
+     * (offsets, values) int arrays of the observed terms, excluded terms and zygosity codes.
+     * Strings are stored as int length followed by UTF-8 bytes, arrays as int length followed by the elements.
+     */
+
+    /** Write the index (without removed rows) to a file. */
+    synchronized void save(Path path) throws IOException {
+        compact();
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = TempFiles.create(parent, "countpp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, ontology.getContentHash());
+                List<String> diseaseIds = new ArrayList<>(diseases.size());
+                for (TermId tid : diseases.values) {
+                    diseaseIds.add(tid.getValue());
+                }
+                writeStrings(out, diseaseIds);
+                writeStrings(out, genes.values);
+                writeStrings(out, geneSymbols);
+                writeStrings(out, pmids.values);
+                writeStrings(out, samples.values);
+                writeStrings(out, paths);
+                writeInts(out, diseaseColumn);
+                writeInts(out, geneColumn);
+                writeInts(out, pmidColumn);
+                writeInts(out, sampleColumn);
+                observed.write(out);
+                excluded.write(out);
+                zygosity.write(out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Load an index that was written by {@link #save}.
+     * @throws IOException if the file cannot be read or was written with other ontology files
+     */
+    static CorpusIndex load(Path path, HpoSnapshot ontology) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(path + " is not a corpus index of the current version");
+            }
+            if (! readString(in).equals(ontology.getContentHash())) {
+                throw new IOException(path + " was created with another version of the ontology");
+            }
+            CorpusIndex index = new CorpusIndex(ontology);
+            for (String diseaseId : readStrings(in)) {
+                index.diseases.getOrAdd(TermId.of(diseaseId));
+            }
+            for (String gene : readStrings(in)) {
+                index.genes.getOrAdd(gene);
+            }
+            index.geneSymbols.addAll(readStrings(in));
+            for (String pmid : readStrings(in)) {
+                index.pmids.getOrAdd(pmid);
+            }
+            for (String sample : readStrings(in)) {
+                index.samples.getOrAdd(sample);
+            }
+            index.paths = readStrings(in);
+            for (int r = 0; r < index.paths.size(); r++) {
+                index.rowByPath.put(index.paths.get(r), r);
+            }
+            index.diseaseColumn = readInts(in);
+            index.geneColumn = readInts(in);
+            index.pmidColumn = readInts(in);
+            index.sampleColumn = readInts(in);
+            index.observed = SparseColumn.read(in);
+            index.excluded = SparseColumn.read(in);
+            index.zygosity = SparseColumn.read(in);
+            return index;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            writeString(out, s == null ? "" : s);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<String> strings = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static void writeInts(DataOutputStream out, IntColumn column) throws IOException {
+        out.writeInt(column.size());
+        for (int i = 0; i < column.size(); i++) {
+            out.writeInt(column.get(i));
+        }
+    }
+
+    private static IntColumn readInts(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        IntColumn column = new IntColumn(n);
+        for (int i = 0; i < n; i++) {
+            column.add(in.readInt());
+        }
+        return column;
+    }
+}
@@ -0,0 +1,101 @@
+package org.monarchinitiative;
+
+import com.beust.jcommander.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command-line options of {@link CountPhenoP}. The defaults correspond to the paths that were
+ * used to generate the supplemental table.
+ * @author Peter Robinson
+ */
+class CountOptions {
+
+    @Parameter(names = {"-h", "--help"}, help = true, description = "display this help message")
+    boolean help;
+
+    @Parameter(names = {"--hpo"}, description = "path to hp.obo")
+    String hpoPath = "/home/robinp/IdeaProjects/LIRICAL/data/hp.obo";
+
+    @Parameter(names = {"-a", "--annotations"}, description = "path to phenotype.hpoa")
+    String phenotypeAnnotationPath = "/home/robinp/IdeaProjects/LIRICAL/data/phenotype.hpoa";
+
+    @Parameter(names = {"-p", "--phenopackets"}, description = "directory with phenopackets")
+    String phenopacketDirectory = "/home/robinp/Desktop/ppacket";
+
+    @Parameter(names = {"-r", "--recursive"}, description = "also search the subdirectories of the phenopacket directory")
+    boolean recursive;
+
+    @Parameter(names = {"--include"}, description = "glob for phenopacket files (file name or relative path), may be repeated [default: *.json, *.json.gz, *.pb, *.pb.gz, *.ppb]")
+    List<String> includes = new ArrayList<>();
+
+    @Parameter(names = {"--exclude"}, description = "glob for files and directories to skip, may be repeated")
+    List<String> excludes = new ArrayList<>();
+
+    @Parameter(names = {"--archives"}, description = "read phenopackets from zip and tar(.gz) archives in place")
+    boolean archives;
+
+    @Parameter(names = {"-o", "--out"}, description = "name of the LaTeX output file")
+    String outPath = "phenopacketstats.tex";
+
+    @Parameter(names = {"--tsv"}, description = "optional output file for the table as tab-separated values")
+    String tsvPath;
+
+    @Parameter(names = {"--json"}, description = "optional output file for the summary statistics as JSON")
+    String jsonPath;
+
+    @Parameter(names = {"--term-table"}, description = "optional output file for the exact and ancestor-propagated counts of each HPO term (TSV)")
+    String termTablePath;
+
+    @Parameter(names = {"--serve"}, description = "keep the corpus in memory and answer count queries (JSON lines on stdin, or HTTP with --port)")
+    boolean serve;
+
+    @Parameter(names = {"--port"}, description = "with --serve: answer queries over HTTP on this port of the loopback address instead of stdin")
+    int port = 0;
+
+    @Parameter(names = {"--save-index"}, description = "optional output file for the columnar index of the corpus (see --load-index)")
+    String saveIndexPath;
+
+    @Parameter(names = {"--load-index"}, description = "with --serve: load the corpus index from this file instead of scanning the phenopackets")
+    String loadIndexPath;
+
+    @Parameter(names = {"--shard"}, description = "only count the phenopackets of shard i of n (\"i/n\", by a hash of the relative path); requires --partial")
+    String shard;
+
+    @Parameter(names = {"--partial"}, description = "output file for the partial result of a shard, see the merge command")
+    String partialPath;
+
+    @Parameter(names = {"-t", "--threads"}, description = "number of threads that parse phenopackets")
+    int threads = 1;
+
+    @Parameter(names = {"--io-threads"}, description = "number of threads that read phenopacket files (with -t 1 and --io-threads 1, the scan is sequential)")
+    int ioThreads = 1;
+
+    @Parameter(names = {"--virtual-io"}, description = "read phenopacket files with virtual threads (Java 21 or newer)")
+    boolean virtualIo;
+
+    @Parameter(names = {"--progress"}, description = "print progress and throughput to stderr every n seconds (0: never)")
+    long progressSeconds = 10;
+
+    @Parameter(names = {"--metrics"}, description = "optional output file for timing metrics (JSON if the name ends with .json, else CSV)")
+    String metricsPath;
+
+    @Parameter(names = {"-k", "--keep-going"}, description = "skip phenopackets that cannot be counted and list them in the error report")
+    boolean keepGoing;
+
+    @Parameter(names = {"--errors"}, description = "error report of --keep-going (JSON lines)")
+    String errorsPath = "countpp-errors.jsonl";
+
+    @Parameter(names = {"--checkpoint"}, description = "save the manifest every n seconds so that a killed run can be resumed (requires --manifest)")
+    long checkpointSeconds = 0;
+
+    @Parameter(names = {"--snapshot-dir"}, description = "directory for cached binary snapshots of hp.obo and phenotype.hpoa")
+    String snapshotDirectory = ".countpp";
+
+    @Parameter(names = {"--no-snapshot"}, description = "always load hp.obo and phenotype.hpoa with phenol")
+    boolean noSnapshot;
+
+    @Parameter(names = {"-m", "--manifest"}, description = "manifest of a previous run; only new or changed phenopackets are parsed")
+    String manifestPath;
+}
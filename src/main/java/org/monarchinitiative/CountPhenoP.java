@@ -1,290 +1,518 @@
 package org.monarchinitiative;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import com.beust.jcommander.JCommander;
+import com.google.common.hash.Hashing;
 import org.monarchinitiative.phenol.base.PhenolRuntimeException;
-import org.monarchinitiative.phenol.formats.hpo.HpoDisease;
-import org.monarchinitiative.phenol.io.OntologyLoader;
-import org.monarchinitiative.phenol.io.obo.hpo.HpoDiseaseAnnotationParser;
-import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.phenopackets.schema.v1.core.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-
-import static org.monarchinitiative.phenol.formats.hpo.HpoModeOfInheritanceTermIds.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class CountPhenoP {
     private static final Logger logger = LoggerFactory.getLogger(CountPhenoP.class);
-    private final String phenopacketDirectoryPath;
-    private List<File> phenopacketFiles;
-    private final Ontology ontology;
-    private final Map<TermId, HpoDisease> diseaseMap;
-
-    private final Map<TermId, Integer> disease2count = new HashMap<>();
-
-    private final Map<TermId, Integer> hpo2count = new HashMap<>();
-
-    private final Set<String> genes = new HashSet<>();
-
-    private final DescriptiveStatistics termsPerPhenopacket = new DescriptiveStatistics();
-    private final DescriptiveStatistics negatedTermsPerPhenopacket = new DescriptiveStatistics();
-
-    private final static String HOMOZYGOUS = "GENO:0000136";
-    private final static String HETEROZYGOUS = "GENO:0000135";
-    private final static String HEMIZYGOUS = "GENO:0000134";
-
-    private double medianCountPerDisease;
-    private double maxCountPerDiseases;
-    private int n_recessive =0;
-    private int n_dominant = 0;
-    private int n_xchromosomal = 0;
-    private int n_heterogeneous = 0;
-    private int n_somatic = 0;
-    private int n_sporadic = 0;
-    private int n_somatic_mosaic = 0;
-    private int n_multiple = 0;
+    /** Finds the phenopackets to count. */
+    private final PhenopacketDiscovery discovery;
+    private final HpoSnapshot ontology;
+    /** Shared cache of resolved HPO ids. */
+    private final TermResolver termResolver;
+    /** Number of threads that parse the phenopackets. */
+    private final int threads;
+    /** Number of threads that read the phenopacket files. */
+    private final int ioThreads;
+    /** Whether the reader threads are virtual threads (Java 21 or newer). */
+    private final boolean virtualIo;
+    /** Path of the manifest for incremental runs, or {@code null} to parse every file. */
+    private final Path manifestPath;
+    /** Records of the previous run, keyed by path of the phenopacket file (empty if not incremental). */
+    private Map<String, PhenopacketRecord> previousRecords = Collections.emptyMap();
+    /** Number of files that had to be parsed in this run (i.e., that were not taken from the manifest). */
+    private final AtomicInteger parsedFiles = new AtomicInteger();
+
+    private PhenopacketCounts counts;
+
+
+    /** Number of ancestor-propagated term counts that are printed by {@link #printStats}. */
+    private final static int TOP_PROPAGATED_TERMS = 20;
+
+    private CountSummary summary;
+    /** Each parser thread normalizes the disease names with its own formatter. */
+    private final ThreadLocal<TableFormatter> formatters = ThreadLocal.withInitial(TableFormatter::new);
+    /** Timing and throughput of this run. */
+    private final ScanMetrics metrics = new ScanMetrics();
+    /** Interval of the progress output on stderr in seconds, 0 for none. */
+    private long progressSeconds = 0;
+    /** Phenopackets that could not be counted; {@code null} unless the scan continues after errors. */
+    private ErrorReport errors;
+    /** Interval in seconds at which the manifest is saved during the scan, 0 for only at the end. */
+    private long checkpointSeconds = 0;
+    private long lastCheckpoint;
 
 
     public static void main(String []args) throws IOException {
-        String hpPath = "/home/robinp/IdeaProjects/LIRICAL/data/hp.obo";
-        String ppacketDir = "/home/robinp/Desktop/ppacket";
-        String phenotypeAnnotationPath = "/home/robinp/IdeaProjects/LIRICAL/data/phenotype.hpoa";
-        CountPhenoP cpp = new CountPhenoP(hpPath,ppacketDir, phenotypeAnnotationPath);
-        BufferedWriter writer = new BufferedWriter(new FileWriter("phenopacketstats.tex"));
-        cpp.writeLongTable(writer);
-        cpp.getStats(writer);
-        cpp.printStats(writer);
-
-        writer.write("\\end{longtable}\n");
-        writer.close();
-    }
-
-
-
-    private CountPhenoP(String hpoPath, String ppacketDirPath, String phenotypeAnnotationPath) {
-        this.ontology = OntologyLoader.loadOntology(new File(hpoPath));
-        diseaseMap = HpoDiseaseAnnotationParser.loadDiseaseMap(phenotypeAnnotationPath,ontology);
-        this.phenopacketDirectoryPath = ppacketDirPath;
-        getListOfPhenopacketFiles();
-    }
-
-
-    private void recordPhenotypes(List<TermId> ids, List<TermId> negated) {
-        termsPerPhenopacket.addValue(ids.size());
-        negatedTermsPerPhenopacket.addValue(negated.size());
-        for (TermId tid : ids) {
-            this.hpo2count.putIfAbsent(tid,0);
-            this.hpo2count.put(tid,this.hpo2count.get(tid));
-        }
-        for (TermId tid : negated) {
-            this.hpo2count.putIfAbsent(tid,0);
-            this.hpo2count.put(tid,1+this.hpo2count.get(tid));
-        }
-    }
-
-    private void recordDiagnosis(Disease d) {
-        OntologyClass oc = d.getTerm();
-        TermId did = TermId.of(oc.getId());
-        this.disease2count.putIfAbsent(did,0);
-        this.disease2count.put(did,1 + disease2count.get(did));
-        HpoDisease hpod = diseaseMap.get(did);
-        if(hpod == null) {
-            System.out.println("Could not retrieve data for " + d.toString());
+        CountOptions options = new CountOptions();
+        ConvertOptions convertOptions = new ConvertOptions();
+        MergeOptions mergeOptions = new MergeOptions();
+        JCommander jc = JCommander.newBuilder().addObject(options).addCommand(convertOptions)
+                .addCommand(mergeOptions).build();
+        jc.setProgramName("countpp");
+        jc.parse(args);
+        if (options.help || convertOptions.help || mergeOptions.help) {
+            jc.usage();
             return;
         }
-        List<TermId> inheritance = hpod.getModesOfInheritance();
-        if (inheritance == null) {
-            System.out.println("Could not find inheritance term for " + hpod.getName());
+        if (ConvertOptions.COMMAND.equals(jc.getParsedCommand())) {
+            PhenopacketDiscovery discovery = new PhenopacketDiscovery(convertOptions.phenopacketDirectory,
+                    convertOptions.recursive, convertOptions.archives, convertOptions.includes, convertOptions.excludes);
+            int n = PhenopacketBundle.convert(discovery, Paths.get(convertOptions.bundlePath));
+            System.out.printf("Wrote %d phenopackets to %s\n", n, convertOptions.bundlePath);
             return;
         }
-        if (inheritance.size() > 1) {
-            n_multiple++;
+        if (MergeOptions.COMMAND.equals(jc.getParsedCommand())) {
+            HpoSnapshot ontology = HpoSnapshot.load(mergeOptions.hpoPath, mergeOptions.phenotypeAnnotationPath,
+                    mergeOptions.noSnapshot ? null : mergeOptions.snapshotDirectory);
+            List<Path> partials = new ArrayList<>();
+            for (String partial : mergeOptions.partialPaths) {
+                partials.add(Paths.get(partial));
+            }
+            PhenopacketCounts counts = PartialCounts.merge(partials, ontology);
+            try (ReportWriter writer = new AsyncReportWriter(openOutputs(mergeOptions.outPath, mergeOptions.tsvPath,
+                    mergeOptions.jsonPath, mergeOptions.termTablePath))) {
+                writer.writeHeader();
+                for (PhenopacketRecord record : counts.records.values()) {
+                    writer.writeRow(record.getRow());
+                }
+                printStats(new CountSummary(counts, ontology), writer);
+            }
             return;
         }
-        for (TermId id : inheritance) {
-            if (id.equals(AUTOSOMAL_RECESSIVE) ) {
-                n_recessive++;
-            } else if ( (id.equals(AUTOSOMAL_DOMINANT) ||  id.equals(CONTIGUOUS_GENE_SYNDROME_AUTOSOMAL_DOMINANT)) ) {
-                n_dominant++;
-            } else if (id.equals(X_LINKED) || id.equals(X_LINKED_RECESSIVE) || id.equals(X_LINKED_DOMINANT)) {
-                n_xchromosomal++;
-            } else if (id.equals(HETEROGENEOUS)) {
-                n_heterogeneous++;
-            } else if (id.equals(SOMATIC_MUTATION)) {
-                n_somatic++;
-            } else if (id.equals(SPORADIC)) {
-                n_sporadic++;
-            }  else if (id.equals(SOMATIC_MOSAICISM)) {
-                n_somatic_mosaic++;
-            }  else{
-                System.out.println("Could not identify id " + id.getValue() + " for disease " + d.toString());
-                System.exit(0);
+        PhenopacketDiscovery discovery = new PhenopacketDiscovery(options.phenopacketDirectory, options.recursive,
+                options.archives, options.includes, options.excludes);
+        int[] shard = {0, 1};
+        if (options.shard != null) {
+            shard = parseShard(options.shard);
+            if (options.partialPath == null) {
+                throw new PhenolRuntimeException("--shard requires --partial");
             }
+            discovery.setShard(shard[0], shard[1]);
+        }
+        CountPhenoP cpp = new CountPhenoP(options.hpoPath, discovery,
+                options.phenotypeAnnotationPath, options.threads, options.ioThreads, options.virtualIo,
+                options.noSnapshot ? null : options.snapshotDirectory,
+                options.manifestPath);
+        cpp.setProgressInterval(options.progressSeconds);
+        cpp.setCheckpointInterval(options.checkpointSeconds);
+        ErrorReport errors = options.keepGoing ? new ErrorReport() : null;
+        if (errors != null) {
+            cpp.setErrorReport(errors);
+        }
+        if (options.serve) {
+            // the responses are the only output on stdout; anything else printed from here on goes to stderr
+            PrintStream responses = System.out;
+            System.setOut(System.err);
+            CorpusIndex index = options.loadIndexPath != null
+                    ? CorpusIndex.load(Paths.get(options.loadIndexPath), cpp.getOntology())
+                    : new CorpusIndex(cpp.getOntology(), cpp.scan().records.values());
+            if (options.saveIndexPath != null) {
+                index.save(Paths.get(options.saveIndexPath));
+            }
+            CountServer server = new CountServer(cpp, index);
+            if (options.port > 0) {
+                server.serveHttp(options.port);
+            } else {
+                server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), responses);
+            }
+            return;
+        }
+        try (ReportWriter writer = new AsyncReportWriter(openOutputs(options.outPath, options.tsvPath,
+                options.jsonPath, options.termTablePath))) {
+            writer.writeHeader();
+            cpp.getStats(writer);
+            printStats(cpp.summary, writer);
+        }
+        if (options.partialPath != null) {
+            PartialCounts.save(Paths.get(options.partialPath), cpp.getOntology().getContentHash(), shard[0], shard[1],
+                    cpp.counts);
+        }
+        if (options.saveIndexPath != null) {
+            new CorpusIndex(cpp.getOntology(), cpp.counts.records.values()).save(Paths.get(options.saveIndexPath));
+        }
+        if (options.metricsPath != null) {
+            cpp.getMetrics().export(Paths.get(options.metricsPath));
+        }
+        if (errors != null && errors.size() > 0) {
+            errors.write(Paths.get(options.errorsPath));
+            System.err.printf("[ERROR] %d phenopackets could not be counted, see %s\n", errors.size(), options.errorsPath);
         }
-
     }
 
 
-    private void printStats(Writer writer) {
-        System.out.printf("Number of diseases: %d (median %f, max %f)\n", this.disease2count.size(), medianCountPerDisease,maxCountPerDiseases);
-        System.out.printf("Autosomal recessive: %d\n", this.n_recessive);
-        System.out.printf("Autosomal dominant: %d\n", this.n_dominant);
-        System.out.printf("X chromosomal: %d\n", this.n_xchromosomal);
-        System.out.printf("heterogeneous: %d\n", this.n_heterogeneous);
-        System.out.printf("somatic: %d\n", this.n_somatic);
-        System.out.printf("somatic mosaic: %d\n", this.n_somatic_mosaic);
-        System.out.printf("sporadic: %d\n", this.n_somatic);
-        System.out.printf("multiple MoI: %d\n", this.n_multiple);
-        System.out.printf("Number of genes: %d\n", genes.size());
-        System.out.printf("Total number of HPO terms used in phenopackets: %d\n", this.hpo2count.size());
-        int mn = 0;
-        for (Integer i : this.hpo2count.values()) {
-            mn += i;
-        }
-        System.out.printf("Mean number of times each HPO term was used: %.2f\n", (double)mn/this.hpo2count.size());
-        int medianNegated = (int)negatedTermsPerPhenopacket.getPercentile(50.0);
-        double meanNegated = negatedTermsPerPhenopacket.getMean();
-        int maxNegated = (int)negatedTermsPerPhenopacket.getMax();
-        System.out.printf("Mean negated %f, median %d max %d\n",meanNegated, medianNegated,maxNegated);
-        int median = (int)termsPerPhenopacket.getPercentile(50.0);
-        double mean = termsPerPhenopacket.getMean();
-        int max = (int)negatedTermsPerPhenopacket.getMax();
-        System.out.printf("Mean  %f, median %d max %d\n",mean, median,max);
-    }
 
+    /** @param shard shard as "i/n" with 0 &lt;= i &lt; n */
+    private static int[] parseShard(String shard) {
+        String[] fields = shard.split("/");
+        try {
+            if (fields.length == 2) {
+                return new int[]{Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim())};
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new PhenolRuntimeException("Invalid shard '" + shard + "', expected i/n (e.g., 0/8)");
+    }
 
+    /** The LaTeX table and the optional TSV table, JSON summary and term table. */
+    private static List<ReportWriter> openOutputs(String outPath, String tsvPath, String jsonPath,
+                                                  String termTablePath) throws IOException {
+        List<ReportWriter> outputs = new ArrayList<>();
+        outputs.add(new LatexReportWriter(new BufferedWriter(new FileWriter(outPath))));
+        if (tsvPath != null) {
+            outputs.add(new TsvReportWriter(new BufferedWriter(new FileWriter(tsvPath))));
+        }
+        if (jsonPath != null) {
+            outputs.add(new JsonSummaryReportWriter(new BufferedWriter(new FileWriter(jsonPath))));
+        }
+        if (termTablePath != null) {
+            outputs.add(new TermFrequencyReportWriter(new BufferedWriter(new FileWriter(termTablePath))));
+        }
+        return outputs;
+    }
 
+    /**
+     * @param threads number of parser threads
+     * @param ioThreads number of reader threads; with one parser and one reader thread, the phenopackets are
+     *                  counted sequentially on the calling thread, otherwise by a {@link ScanPipeline}
+     * @param virtualIo use virtual threads for reading (if supported by the JDK)
+     */
+    CountPhenoP(String hpoPath, PhenopacketDiscovery discovery, String phenotypeAnnotationPath, int threads,
+                int ioThreads, boolean virtualIo, String snapshotDir, String manifestPath) {
+        long start = System.nanoTime();
+        this.ontology = HpoSnapshot.load(hpoPath, phenotypeAnnotationPath, snapshotDir);
+        this.metrics.setOntologyLoadNanos(System.nanoTime() - start);
+        this.termResolver = new TermResolver(this.ontology);
+        this.discovery = discovery;
+        this.threads = Math.max(1, threads);
+        this.ioThreads = Math.max(1, ioThreads);
+        this.virtualIo = virtualIo;
+        this.manifestPath = manifestPath == null ? null : Paths.get(manifestPath);
+    }
 
 
-    private void writeLongTable(Writer writer) throws IOException {
-        writer.write("\\begin{longtable}{|p{8cm}|p{2cm}|p{2cm}|p{1cm}|l|}\n" +
-                "\\caption{Phenopackets analyzed in this work}  \\label{table:phenopackets} \\\\\n" +
-                "\\hline\n" +
-                "\\textbf{Disease} & \\textbf{Gene} & \\textbf{Proband} & \\textbf{n. HPO terms}& \\textbf{Publication} \\\\\n" +
-                "\\hline\n" +
-                "\\endfirsthead\n" +
-                "\\multicolumn{5}{c}%\n" +
-                "{\\tablename\\ \\thetable\\ -- \\textit{Continued from previous page}} \\\\\n" +
-                "\\hline\n" +
-                "\\textbf{Disease} & \\textbf{Gene} & \\textbf{Proband} & \\textbf{n. HPO terms}& \\textbf{Publication} \\\\\n" +
-                "\\hline\n" +
-                "\\endhead\n" +
-                "\\hline \\multicolumn{5}{r}{\\textit{Continued on next page}} \\\\\n" +
-                "\\endfoot\n" +
-                "\\hline\n" +
-                "\\endlastfoot \n");
+    /**
+     * Continue after errors: phenopackets that cannot be read, parsed or counted are added to the report
+     * and left out of the counts.
+     */
+    void setErrorReport(ErrorReport errors) {
+        this.errors = errors;
+        this.discovery.setErrorHandler((path, e) -> errors.add(path.toString(), "discover", e));
     }
 
-    private static String convert(String str)
-    {
-
-        // Create a char array of given String
-        char[] ch = str.toCharArray();
-        for (int i = 0; i < str.length(); i++) {
+    /**
+     * Save the manifest every {@code seconds} seconds during the scan, so that a run that is killed can be
+     * resumed with the same manifest (only the phenopackets that were not yet counted are parsed again).
+     */
+    void setCheckpointInterval(long seconds) {
+        if (seconds > 0 && this.manifestPath == null) {
+            throw new PhenolRuntimeException("Checkpoints require a manifest (--manifest)");
+        }
+        this.checkpointSeconds = seconds;
+    }
 
-            // If first character of a word is found
-            if (i == 0 && ch[i] != ' ' ||
-                    ch[i] != ' ' && (ch[i - 1] == ' ' || ch[i-1] == '-')) {
+    void setProgressInterval(long seconds) {
+        this.progressSeconds = seconds;
+    }
 
-                // If it is in lower-case
-                if (ch[i] >= 'a' && ch[i] <= 'z') {
+    ScanMetrics getMetrics() {
+        return metrics;
+    }
 
-                    // Convert into Upper-case
-                    ch[i] = (char)(ch[i] - 'a' + 'A');
-                }
+    private static void printStats(CountSummary summary, ReportWriter writer) throws IOException {
+        PhenopacketCounts counts = summary.counts;
+        System.out.printf("Number of diseases: %d (median %f, max %f)\n", counts.disease2count.size(), summary.medianCountPerDisease,summary.maxCountPerDisease);
+        System.out.printf("Autosomal recessive: %d\n", summary.getPacketCount(InheritanceCategory.AUTOSOMAL_RECESSIVE));
+        System.out.printf("Autosomal dominant: %d\n", summary.getPacketCount(InheritanceCategory.AUTOSOMAL_DOMINANT));
+        System.out.printf("X chromosomal: %d\n", summary.getPacketCount(InheritanceCategory.X_CHROMOSOMAL));
+        System.out.printf("heterogeneous: %d\n", summary.getPacketCount(InheritanceCategory.HETEROGENEOUS));
+        System.out.printf("somatic: %d\n", summary.getPacketCount(InheritanceCategory.SOMATIC));
+        System.out.printf("somatic mosaic: %d\n", summary.getPacketCount(InheritanceCategory.SOMATIC_MOSAIC));
+        System.out.printf("sporadic: %d\n", summary.getPacketCount(InheritanceCategory.SPORADIC));
+        System.out.printf("multiple MoI: %d\n", summary.getPacketCount(InheritanceCategory.MULTIPLE));
+        System.out.printf("Number of genes: %d\n", counts.genes.size());
+        System.out.printf("Total number of HPO terms used in phenopackets: %d\n", counts.hpo2count.size());
+        System.out.printf("Mean number of times each HPO term was used: %.2f\n", summary.getMeanUsesPerHpoTerm());
+        int medianNegated = (int)counts.negatedTermsPerPhenopacket.getPercentile(50.0);
+        double meanNegated = counts.negatedTermsPerPhenopacket.getMean();
+        int maxNegated = (int)counts.negatedTermsPerPhenopacket.getMax();
+        System.out.printf("Mean negated %f, median %d max %d\n",meanNegated, medianNegated,maxNegated);
+        int median = (int)counts.termsPerPhenopacket.getPercentile(50.0);
+        double mean = counts.termsPerPhenopacket.getMean();
+        int max = (int)counts.negatedTermsPerPhenopacket.getMax();
+        System.out.printf("Mean  %f, median %d max %d\n",mean, median,max);
+        System.out.println("Most frequent HPO terms (including descendants):");
+        for (CountSummary.TermFrequency term : summary.propagatedTerms.subList(0,
+                Math.min(TOP_PROPAGATED_TERMS, summary.propagatedTerms.size()))) {
+            System.out.printf("%s\t%s\t%d\t%.1f%%\n", term.termId.getValue(), term.label, term.propagated,
+                    100.0 * term.fraction);
+        }
+        System.out.println("Phenopackets and genes by mode of inheritance:");
+        for (InheritanceCategory category : InheritanceCategory.values()) {
+            if (summary.getPacketCount(category) > 0) {
+                System.out.printf("%s\t%d\t%d\n", category.getKey(), summary.getPacketCount(category),
+                        summary.getGeneCount(category));
             }
-
-            // If apart from first character
-            // Any one is in Upper-case
-            else if (ch[i] >= 'A' && ch[i] <= 'Z')
-
-                // Convert into Lower-Case
-                ch[i] = (char)(ch[i] + 'a' - 'A');
         }
+        writer.writeSummary(summary);
+    }
 
-        // Convert the char array to equivalent String
-        return new String(ch);
+    /** @return the string with each word capitalized (see {@link TableFormatter#appendTitleCase}) */
+    static String convert(String str) {
+        StringBuilder sb = new StringBuilder(str.length());
+        TableFormatter.appendTitleCase(sb, str, 0, str.length());
+        return sb.toString();
     }
 
-    private int getPathogenicAlleleCount(List<Variant> vars) {
+    /** @param zygosity zygosity of each variant of a phenopacket */
+    static int getPathogenicAlleleCount(List<Zygosity> zygosity) {
         int n = 0;
-        for (Variant v : vars) {
-            OntologyClass oc = v.getZygosity();
-            if (oc.getId().equals(HOMOZYGOUS)) {
-                n += 2;
-            } else if (oc.getId().equals(HETEROZYGOUS)) {
-                n += 1;
-            } else if (oc.getId().equals(HEMIZYGOUS)) {
-                n += 1;
-            } else {
-                throw new RuntimeException("Could not identify genotype: " + oc.toString());
+        for (Zygosity z : zygosity) {
+            if (z == Zygosity.OTHER) {
+                throw new RuntimeException("Could not identify genotype: " + z);
             }
+            n += z.getAlleles();
         }
         return n;
     }
 
+    /** @return the GENO id of the zygosity of each variant */
+    private static List<String> zygosity(List<Variant> vars) {
+        List<String> zygosity = new ArrayList<>(vars.size());
+        for (Variant v : vars) {
+            zygosity.add(v.getZygosity().getId());
+        }
+        return zygosity;
+    }
+
     // disease, gene, proband, hpoterms, pub.
-    private void getStats(Writer writer)   throws IOException {
-        for (java.io.File file: this.phenopacketFiles) {
-            if (! file.exists()) {
-                throw new RuntimeException("Could not find phenopacket file at " + file.getAbsolutePath());
+    void getStats(ReportWriter writer)   throws IOException {
+        scan();
+        for (PhenopacketRecord record : counts.records.values()) {
+            writer.writeRow(record.getRow());
+        }
+    }
+
+    /** Count all phenopackets of the corpus (and save the manifest if there is one). */
+    PhenopacketCounts scan() throws IOException {
+        if (this.manifestPath != null) {
+            this.previousRecords = PhenopacketManifest.load(this.manifestPath, this.ontology.getContentHash());
+        }
+        PhenopacketCounts phenopacketCounts = new PhenopacketCounts(this.ontology);
+        metrics.start(progressSeconds, System.err);
+        this.lastCheckpoint = System.nanoTime();
+        try {
+            if (this.threads == 1 && this.ioThreads == 1 && ! this.virtualIo) {
+                discovery.discover(source -> aggregate(phenopacketCounts, getRecord(source)));
+            } else {
+                new ScanPipeline<>(discovery, this::readOrReport, this::toRecordOrReport, ioThreads, threads, virtualIo)
+                        .run(record -> aggregate(phenopacketCounts, record));
             }
-            PhenopacketImporter importer = PhenopacketImporter.fromJson(file.getAbsolutePath(), this.ontology);
-            Disease disease = importer.getDiagnosis();
-            List<Variant> vars = importer.getVariantList();
-           // int n_path_alleles = getPathogenicAlleleCount(vars);
-            recordDiagnosis(disease);
-
-
-            List<TermId> ids = importer.getHpoTerms();
-            List<TermId> negated = importer.getNegatedHpoTerms();
-            recordPhenotypes(ids,negated);
-            Gene g = importer.getGene();
-            genes.add(g.getId());
-            String diseaseName = disease.getTerm().getLabel();
-            int i = diseaseName.indexOf(";");
-            if (i>0) {
-                diseaseName = diseaseName.substring(0,i);
+        } catch (RuntimeException e) {
+            if (this.manifestPath != null) {
+                // keep the work done so far; a new run with the same manifest continues from here
+                saveCheckpoint(phenopacketCounts);
             }
-            diseaseName = convert(diseaseName);
-            diseaseName = diseaseName.replace("Syndrome", "syndrome");
-            String samplename =  importer.getSamplename().replaceAll("_", "-");
-            writer.write(String.format("%s & %s & %s & %d & %s\\\\ \n",diseaseName,
-                    g.getSymbol(),samplename,(ids.size() + negated.size()),
-                    importer.getPMID()));
+            throw e;
+        } finally {
+            metrics.stop();
+        }
+        this.counts = phenopacketCounts;
+        this.summary = new CountSummary(counts, this.ontology);
+        metrics.setTotals(termResolver.getReplacements(), termResolver.size(), termResolver.getHits(),
+                termResolver.getMisses(), summary.getPacketCount(InheritanceCategory.UNKNOWN_DISEASE), errors == null ? 0 : errors.size());
+        if (progressSeconds > 0) {
+            System.err.println(metrics.progressLine());
         }
+        if (this.manifestPath != null) {
+            PhenopacketManifest.save(this.manifestPath, this.ontology.getContentHash(), counts.records.values());
+            logger.info("Parsed {} new or changed phenopackets, reused {} from {}", parsedFiles.get(),
+                    counts.records.size() - parsedFiles.get(), manifestPath);
+        }
+
+        logger.info("Resolved HPO ids: {} distinct, {} cache hits, {} misses", termResolver.size(),
+                termResolver.getHits(), termResolver.getMisses());
+        return counts;
+    }
 
-        DescriptiveStatistics stats = new DescriptiveStatistics();
-        for (TermId tid : this.disease2count.keySet()) {
-            int c = disease2count.get(tid);
-            stats.addValue(c);
+    /** Parse a single phenopacket file (used to update a running {@link CountServer}). */
+    PhenopacketRecord parse(Path file) throws IOException {
+        PhenopacketSource source = PhenopacketSource.ofFile(file,
+                Files.readAttributes(file, BasicFileAttributes.class));
+        return toRecord(new LoadedPhenopacket(source, source.read(), null));
+    }
+
+    HpoSnapshot getOntology() {
+        return ontology;
+    }
+
+    private void aggregate(PhenopacketCounts phenopacketCounts, PhenopacketRecord record) {
+        if (record == null) {
+            return; // could not be read or parsed, see error report
+        }
+        long start = System.nanoTime();
+        try {
+            phenopacketCounts.add(record);
+        } catch (RuntimeException e) {
+            if (errors == null) {
+                throw e;
+            }
+            errors.add(record.getPath(), "aggregate", e);
+            return;
+        }
+        metrics.aggregate.record(System.nanoTime() - start);
+        metrics.files.increment();
+        if (checkpointSeconds > 0 && System.nanoTime() - lastCheckpoint > TimeUnit.SECONDS.toNanos(checkpointSeconds)) {
+            saveCheckpoint(phenopacketCounts);
+            lastCheckpoint = System.nanoTime();
+        }
+    }
+
+    /**
+     * Save the records counted so far together with the records of the previous run that were not yet
+     * visited (so that they can still be reused if the run is killed).
+     */
+    private void saveCheckpoint(PhenopacketCounts phenopacketCounts) {
+        List<PhenopacketRecord> records = new ArrayList<>(phenopacketCounts.records.values());
+        for (PhenopacketRecord previous : previousRecords.values()) {
+            if (! phenopacketCounts.records.containsKey(previous.getPath())) {
+                records.add(previous);
+            }
         }
-        this.medianCountPerDisease = stats.getPercentile(0.5);
-        this.maxCountPerDiseases = stats.getMax();
+        try {
+            PhenopacketManifest.save(this.manifestPath, this.ontology.getContentHash(), records);
+            logger.info("Saved checkpoint with {} records to {}", records.size(), manifestPath);
+        } catch (IOException e) {
+            logger.error("Could not save checkpoint to {}: {}", manifestPath, e.getMessage());
+        }
+    }
 
+    /** A phenopacket after the I/O stage: the contents of the file and the record of the previous run. */
+    private static final class LoadedPhenopacket {
+        private final PhenopacketSource source;
+        /** {@code null} if the record of the previous run can be reused without reading the file. */
+        private final byte[] contents;
+        private final PhenopacketRecord previous;
+
+        private LoadedPhenopacket(PhenopacketSource source, byte[] contents, PhenopacketRecord previous) {
+            this.source = source;
+            this.contents = contents;
+            this.previous = previous;
+        }
     }
 
+    /** Get the contribution of a phenopacket file (both stages on the calling thread). */
+    private PhenopacketRecord getRecord(PhenopacketSource source) {
+        try {
+            LoadedPhenopacket loaded = readOrReport(source);
+            return loaded == null ? null : toRecordOrReport(loaded);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read phenopacket at " + source.getPath(), e);
+        }
+    }
 
+    /** {@link #readPhenopacket}; if the scan continues after errors, they are reported and null is returned. */
+    private LoadedPhenopacket readOrReport(PhenopacketSource source) throws IOException {
+        if (errors == null) {
+            return readPhenopacket(source);
+        }
+        try {
+            return readPhenopacket(source);
+        } catch (IOException | RuntimeException e) {
+            errors.add(source.getPath(), "read", e);
+            return null;
+        }
+    }
 
+    /** {@link #toRecord}; if the scan continues after errors, they are reported and null is returned. */
+    private PhenopacketRecord toRecordOrReport(LoadedPhenopacket loaded) {
+        if (errors == null) {
+            return toRecord(loaded);
+        }
+        try {
+            return toRecord(loaded);
+        } catch (RuntimeException e) {
+            errors.add(loaded.source.getPath(), "parse", e);
+            return null;
+        }
+    }
 
+    /**
+     * I/O stage: read the phenopacket unless the size and modification time of the file are the same as
+     * in the previous run.
+     */
+    private LoadedPhenopacket readPhenopacket(PhenopacketSource source) throws IOException {
+        PhenopacketRecord previous = previousRecords.get(source.getPath());
+        if (previous != null && previous.getSize() == source.getSize()
+                && previous.getLastModified() == source.getLastModified()) {
+            metrics.reused.increment();
+            return new LoadedPhenopacket(source, null, previous);
+        }
+        try {
+            long start = System.nanoTime();
+            byte[] contents = source.read();
+            metrics.read.record(System.nanoTime() - start);
+            metrics.bytes.add(contents.length);
+            return new LoadedPhenopacket(source, contents, previous);
+        } catch (IOException e) {
+            throw new IOException("Could not read phenopacket at " + source.getPath(), e);
+        }
+    }
 
-    private void getListOfPhenopacketFiles() {
-        phenopacketFiles = new ArrayList<>();
-        final File folder = new File(phenopacketDirectoryPath);
-        if (! folder.isDirectory()) {
-            throw new PhenolRuntimeException("Could not open Phenopackets directory at "+phenopacketDirectoryPath);
+    /**
+     * Parser stage: get the contribution of a phenopacket file. The record of the previous run is reused if the
+     * size and modification time of the file, or else its content hash, are unchanged; otherwise the file is parsed.
+     */
+    private PhenopacketRecord toRecord(LoadedPhenopacket loaded) {
+        PhenopacketSource source = loaded.source;
+        PhenopacketRecord previous = loaded.previous;
+        byte[] contents = loaded.contents;
+        if (contents == null) {
+            return previous;
         }
-        int counter=0;
-        for (final File fileEntry : folder.listFiles()) {
-            if (fileEntry.isFile() && fileEntry.getAbsolutePath().endsWith(".json")) {
-                logger.info("\tPhenopacket: \"{}\"", fileEntry.getAbsolutePath());
-                //System.out.println(++counter + ") "+ fileEntry.getName());
-                this.phenopacketFiles.add(fileEntry);
-            }
+        String path = source.getPath();
+        long size = source.getSize();
+        long lastModified = source.getLastModified();
+        String hash = Hashing.sha256().hashBytes(contents).toString();
+        if (previous != null && previous.getHash().equals(hash)) {
+            metrics.reused.increment();
+            return previous.withFileAttributes(size, lastModified);
         }
+        parsedFiles.incrementAndGet();
+        long start = System.nanoTime();
+        PhenopacketImporter importer = source.isProtobuf()
+                ? PhenopacketImporter.fromProtobuf(contents, path, this.termResolver)
+                : PhenopacketImporter.fromJson(contents, path, this.termResolver);
+        long parsed = System.nanoTime();
+        metrics.parse.record(parsed - start);
+        Disease disease = importer.getDiagnosis();
+        List<Variant> vars = importer.getVariantList();
+        TermResolver.ResolvedTerms terms = importer.getResolvedTerms();
+        metrics.resolve.record(System.nanoTime() - parsed);
+        List<TermId> ids = terms.getObserved();
+        List<TermId> negated = terms.getNegated();
+        Gene g = importer.getGene();
+        String diseaseName = formatters.get().normalizeDiseaseName(disease.getTerm().getLabel());
+        TableRow row = new TableRow(diseaseName, g.getSymbol(), importer.getSamplename(),
+                ids.size() + negated.size(), importer.getPMID());
+        return new PhenopacketRecord(path, size, lastModified, hash, TermId.of(disease.getTerm().getId()),
+                g.getId(), ids, negated, zygosity(vars), row);
     }
 
 }
@@ -0,0 +1,156 @@
+package org.monarchinitiative;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running mode of countpp: the ontology is loaded and the corpus is scanned once, and count queries are then
+ * answered from a {@link CorpusIndex}. Requests are either read as JSON lines from stdin (one JSON response line
+ * per request) or received by an HTTP server that only listens on the loopback address. Each request has an
+ * operation ({@code op} in JSON, the path in HTTP) and string parameters:
+ * <ul>
+ *     <li>{@code count}: number of phenopackets, diseases and genes for the filter {@code disease}, {@code gene},
+ *     {@code term} and {@code inheritance} (all optional, see {@link CorpusIndex.Query})</li>
+ *     <li>{@code terms}: the most frequent terms (with ancestors) of the matching phenopackets ({@code limit})</li>
+ *     <li>{@code groupBy}: number of matching phenopackets per {@code by} = disease, gene, pmid or inheritance</li>
+ *     <li>{@code alleles}: variants per zygosity and pathogenic alleles of the matching phenopackets</li>
+ *     <li>{@code add}: parse the phenopacket file {@code path} and add (or replace) it</li>
+ *     <li>{@code remove}: remove the phenopacket with the given {@code path}</li>
+ * </ul>
+ * For example, {@code {"op":"count","gene":"FBN1","term":"HP:0001250"}} or
+ * {@code curl 'http://localhost:8080/count?gene=FBN1&term=HP:0001250'}.
+ * @author Peter Robinson
+ */
+final class CountServer {
+    private static final Logger logger = LoggerFactory.getLogger(CountServer.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int DEFAULT_TERM_LIMIT = 20;
+
+    private final CountPhenoP counter;
+    private final CorpusIndex index;
+
+    CountServer(CountPhenoP counter, CorpusIndex index) {
+        this.counter = counter;
+        this.index = index;
+    }
+
+    /** Answer one request; errors in the request are returned as {@code {"error": message}}. */
+    Map<String, Object> handle(String op, Map<String, String> parameters) {
+        long start = System.nanoTime();
+        Map<String, Object> response = new LinkedHashMap<>();
+        try {
+            switch (op == null ? "" : op) {
+                case "count":
+                    response.putAll(index.count(CorpusIndex.Query.of(parameters)));
+                    break;
+                case "terms":
+                    int limit = parameters.containsKey("limit")
+                            ? Integer.parseInt(parameters.get("limit")) : DEFAULT_TERM_LIMIT;
+                    response.put("terms", index.termFrequencies(CorpusIndex.Query.of(parameters), limit));
+                    break;
+                case "groupBy":
+                    response.put("groups", index.groupBy(required(parameters, "by"), CorpusIndex.Query.of(parameters)));
+                    break;
+                case "alleles":
+                    response.putAll(index.alleleCounts(CorpusIndex.Query.of(parameters)));
+                    break;
+                case "add":
+                    PhenopacketRecord record = counter.parse(Paths.get(required(parameters, "path")));
+                    index.add(record);
+                    response.put("path", record.getPath());
+                    break;
+                case "remove":
+                    response.put("removed", index.remove(Paths.get(required(parameters, "path"))
+                            .toAbsolutePath().toString()));
+                    break;
+                default:
+                    throw new PhenolRuntimeException("Unknown operation '" + op + "'");
+            }
+            response.put("size", index.size());
+        } catch (IOException | RuntimeException e) {
+            response.clear();
+            response.put("error", String.valueOf(e.getMessage()));
+        }
+        response.put("millis", (System.nanoTime() - start) / 1e6);
+        return response;
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new PhenolRuntimeException("Missing parameter '" + name + "'");
+        }
+        return value;
+    }
+
+    /** Read JSON requests from the reader, one per line, until the end of the input. */
+    void serve(BufferedReader in, PrintStream out) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Map<String, Object> response;
+            try {
+                Map<String, String> request = MAPPER.readValue(line, new TypeReference<Map<String, String>>() {});
+                response = handle(request.get("op"), request);
+            } catch (IOException e) {
+                response = new LinkedHashMap<>();
+                response.put("error", "Invalid request: " + e.getMessage());
+            }
+            out.println(MAPPER.writeValueAsString(response));
+            out.flush();
+        }
+    }
+
+    /** Start an HTTP server on the loopback address; it runs until the JVM is stopped. */
+    HttpServer serveHttp(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handleHttp);
+        server.setExecutor(Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors())));
+        server.start();
+        logger.info("Serving counts on http://{}:{}/", server.getAddress().getHostString(),
+                server.getAddress().getPort());
+        return server;
+    }
+
+    private void handleHttp(HttpExchange exchange) throws IOException {
+        String op = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "");
+        Map<String, Object> response = handle(op, queryParameters(exchange.getRequestURI().getRawQuery()));
+        byte[] body = MAPPER.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(response.containsKey("error") ? 400 : 200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> queryParameters(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int i = pair.indexOf('=');
+            if (i > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, i), "UTF-8"),
+                        URLDecoder.decode(pair.substring(i + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,116 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.*;
+
+/**
+ * Summary statistics of a count that are printed by {@code printStats} and written by the
+ * {@link JsonSummaryReportWriter}. Derived from the (merged) {@link PhenopacketCounts} at the end of a run.
+ * @author Peter Robinson
+ */
+final class CountSummary {
+    final PhenopacketCounts counts;
+    /** Note: this is the 0.5th percentile of the number of phenopackets per disease, as in the original table. */
+    final double medianCountPerDisease;
+    final double maxCountPerDisease;
+    /** Number of phenopackets per inheritance category, indexed by {@link InheritanceCategory#ordinal()}. */
+    private final int[] packetsByInheritance;
+    /** All terms with a propagated count, sorted by decreasing propagated count. */
+    final List<TermFrequency> propagatedTerms;
+
+    /** Exact and ancestor-propagated count of one HPO term. */
+    static final class TermFrequency {
+        final TermId termId;
+        final String label;
+        /** Number of times the term itself was used (observed or excluded). */
+        final int exact;
+        /** Number of phenopackets with the term or one of its descendants (observed). */
+        final int propagated;
+        /** Fraction of all phenopackets with the term or one of its descendants. */
+        final double fraction;
+
+        private TermFrequency(TermId termId, String label, int exact, int propagated, double fraction) {
+            this.termId = termId;
+            this.label = label;
+            this.exact = exact;
+            this.propagated = propagated;
+            this.fraction = fraction;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", termId.getValue());
+            map.put("label", label);
+            map.put("exact", exact);
+            map.put("propagated", propagated);
+            map.put("fraction", fraction);
+            return map;
+        }
+    }
+
+    CountSummary(PhenopacketCounts counts, HpoSnapshot ontology) {
+        this.counts = counts;
+        StatisticsAccumulator stats = new IntHistogram();
+        counts.disease2count.forEach((tid, c) -> stats.addValue(c));
+        this.medianCountPerDisease = stats.getPercentile(0.5);
+        this.maxCountPerDisease = stats.getMax();
+        this.packetsByInheritance = counts.getInheritanceCounts();
+        int n = Math.max(1, counts.records.size());
+        List<TermFrequency> terms = new ArrayList<>();
+        counts.propagated.forEach((tid, c) -> terms.add(new TermFrequency(tid, ontology.getTermLabel(tid),
+                counts.hpo2count.get(tid), c, (double) c / n)));
+        terms.sort(Comparator.comparingInt((TermFrequency t) -> -t.propagated).thenComparing(t -> t.termId.getValue()));
+        this.propagatedTerms = Collections.unmodifiableList(terms);
+    }
+
+    int getPacketCount(InheritanceCategory category) {
+        return packetsByInheritance[category.ordinal()];
+    }
+
+    int getGeneCount(InheritanceCategory category) {
+        Set<String> genes = counts.genesByInheritance.get(category);
+        return genes == null ? 0 : genes.size();
+    }
+
+    double getMeanUsesPerHpoTerm() {
+        return (double) counts.hpo2count.total() / counts.hpo2count.size();
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("phenopackets", counts.records.size());
+        map.put("diseases", counts.disease2count.size());
+        map.put("medianCountPerDisease", medianCountPerDisease);
+        map.put("maxCountPerDisease", maxCountPerDisease);
+        Map<String, Object> inheritance = new LinkedHashMap<>();
+        Map<String, Object> genesByInheritance = new LinkedHashMap<>();
+        for (InheritanceCategory category : InheritanceCategory.values()) {
+            if (category != InheritanceCategory.UNSUPPORTED) {
+                inheritance.put(category.getKey(), getPacketCount(category));
+                genesByInheritance.put(category.getKey(), getGeneCount(category));
+            }
+        }
+        map.put("inheritance", inheritance);
+        map.put("genesByInheritance", genesByInheritance);
+        map.put("genes", counts.genes.size());
+        map.put("hpoTerms", counts.hpo2count.size());
+        map.put("meanUsesPerHpoTerm", getMeanUsesPerHpoTerm());
+        map.put("termsPerPhenopacket", statistics(counts.termsPerPhenopacket));
+        map.put("negatedTermsPerPhenopacket", statistics(counts.negatedTermsPerPhenopacket));
+        List<Map<String, Object>> propagated = new ArrayList<>(propagatedTerms.size());
+        for (TermFrequency term : propagatedTerms) {
+            propagated.add(term.toMap());
+        }
+        map.put("propagatedTerms", propagated);
+        return map;
+    }
+
+    private static Map<String, Object> statistics(StatisticsAccumulator stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("mean", stats.getMean());
+        map.put("median", stats.getPercentile(50.0));
+        map.put("max", stats.getMax());
+        return map;
+    }
+}
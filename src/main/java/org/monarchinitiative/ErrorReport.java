@@ -0,0 +1,71 @@
+package org.monarchinitiative;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the phenopackets that could not be counted in a scan with {@code --keep-going}, together with
+ * the stage (discover, read, parse, aggregate) and the cause of the failure. The report is written as
+ * JSON lines; the phenopackets listed there are not part of the counts or the table.
+ * Errors can be added concurrently by all stages of a scan.
+ * @author Peter Robinson
+ */
+final class ErrorReport {
+    private static final Logger logger = LoggerFactory.getLogger(ErrorReport.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** A phenopacket (or directory or archive) that could not be counted. */
+    static final class ScanError {
+        final String path;
+        final String stage;
+        final String type;
+        final String message;
+
+        private ScanError(String path, String stage, String type, String message) {
+            this.path = path;
+            this.stage = stage;
+            this.type = type;
+            this.message = message;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<ScanError> errors = new ConcurrentLinkedQueue<>();
+
+    void add(String path, String stage, Throwable cause) {
+        logger.error("Could not count {} ({}): {}", path, stage, cause.getMessage());
+        errors.add(new ScanError(path, stage, cause.getClass().getName(), String.valueOf(cause.getMessage())));
+    }
+
+    int size() {
+        return errors.size();
+    }
+
+    List<ScanError> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    void write(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (ScanError error : errors) {
+                ObjectNode node = MAPPER.createObjectNode()
+                        .put("path", error.path)
+                        .put("stage", error.stage)
+                        .put("type", error.type)
+                        .put("message", error.message);
+                writer.write(node.toString());
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package org.monarchinitiative;
+
+import com.google.common.collect.ImmutableList;
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.monarchinitiative.phenol.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.io.OntologyLoader;
+import org.monarchinitiative.phenol.io.obo.hpo.HpoDiseaseAnnotationParser;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The parts of the HPO ontology and of the disease annotations that are needed to count phenopackets:
+ * the ids of the term map, the mapping of obsolete/alternative ids to the primary id, the label and the
+ * direct (is_a) parents of each term, the ancestor closure of all terms ({@link AncestorIndex}), and the name and
+ * modes of inheritance of each disease.
+ * <p>
+ * Loading hp.obo and phenotype.hpoa with phenol takes tens of seconds, so the extracted data is stored in
+ * a compact binary snapshot whose file name contains a content hash of the two source files. The snapshot is
+ * built the first time a given pair of files is used and memory-mapped on later runs.
+ * @author Peter Robinson
+ */
+class HpoSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(HpoSnapshot.class);
+    /** First bytes of every snapshot file ("CPPS"). */
+    private static final int MAGIC = 0x43505053;
+    /** Increment whenever the layout of the snapshot file changes. */
+    private static final int FORMAT_VERSION = 3;
+    /** All ids of the HPO term map, including alternative and obsolete ids. */
+    private final Map<TermId, TermId> id2primary;
+    /** Alternative and obsolete ids (these are contained in {@link #id2primary}). */
+    private final Set<TermId> obsoleteTermIds;
+    /** Label of each primary term. */
+    private final Map<TermId, String> labels;
+    /** Direct (is_a) parents of each primary term. */
+    private final Map<TermId, List<TermId>> parents;
+    private final Map<TermId, HpoDisease> diseaseMap;
+    /** Dense index of all ids of the term map, used for counting HPO terms. */
+    private final TermIndex hpoTermIndex;
+    /** Dense index of all diseases of the disease map, used for counting diseases. */
+    private final TermIndex diseaseIndex;
+    /** Inheritance category of each disease of {@link #diseaseIndex}. */
+    private final InheritanceCategory[] diseaseCategories;
+    /** Ancestor closure of all terms over {@link #hpoTermIndex}. */
+    private final AncestorIndex ancestorIndex;
+    /** SHA-256 of hp.obo and phenotype.hpoa, or the empty string if unknown. */
+    private String contentHash = "";
+
+    private HpoSnapshot(Map<TermId, TermId> id2primary, Set<TermId> obsoleteTermIds, Map<TermId, String> labels,
+                        Map<TermId, List<TermId>> parents, Map<TermId, HpoDisease> diseaseMap) {
+        this(id2primary, obsoleteTermIds, labels, parents, diseaseMap, null);
+    }
+
+    /** @param closure ancestor closure read from a snapshot file, {@code null} to compute it from the parents */
+    private HpoSnapshot(Map<TermId, TermId> id2primary, Set<TermId> obsoleteTermIds, Map<TermId, String> labels,
+                        Map<TermId, List<TermId>> parents, Map<TermId, HpoDisease> diseaseMap, ByteBuffer closure) {
+        this.id2primary = id2primary;
+        this.obsoleteTermIds = obsoleteTermIds;
+        this.labels = labels;
+        this.parents = parents;
+        this.diseaseMap = diseaseMap;
+        this.hpoTermIndex = new TermIndex(id2primary.keySet());
+        this.diseaseIndex = new TermIndex(diseaseMap.keySet());
+        this.diseaseCategories = new InheritanceCategory[diseaseIndex.size()];
+        for (int i = 0; i < diseaseCategories.length; i++) {
+            diseaseCategories[i] = InheritanceCategory.of(diseaseMap.get(diseaseIndex.termId(i)));
+        }
+        this.ancestorIndex = closure != null ? AncestorIndex.read(hpoTermIndex, closure)
+                : new AncestorIndex(hpoTermIndex, id2primary, parents);
+    }
+
+    /**
+     * Extract the data we need from a fully loaded ontology and disease map.
+     */
+    static HpoSnapshot fromOntology(Ontology ontology, Map<TermId, HpoDisease> diseaseMap) {
+        Map<TermId, TermId> id2primary = new HashMap<>();
+        for (TermId tid : ontology.getTermMap().keySet()) {
+            id2primary.put(tid, ontology.getPrimaryTermId(tid));
+        }
+        Set<TermId> obsolete = new HashSet<>(ontology.getObsoleteTermIds());
+        obsolete.retainAll(id2primary.keySet());
+        Map<TermId, String> labels = new HashMap<>();
+        Map<TermId, List<TermId>> parents = new HashMap<>();
+        for (TermId tid : id2primary.keySet()) {
+            if (! tid.equals(id2primary.get(tid)) || obsolete.contains(tid)) {
+                continue;
+            }
+            labels.put(tid, ontology.getTermMap().get(tid).getName());
+            parents.put(tid, new ArrayList<>(ontology.getParentTermIds(tid)));
+        }
+        Map<TermId, HpoDisease> diseases = new HashMap<>();
+        for (HpoDisease disease : diseaseMap.values()) {
+            diseases.put(disease.getDiseaseDatabaseId(),
+                    makeDisease(disease.getName(), disease.getDiseaseDatabaseId(), disease.getModesOfInheritance()));
+        }
+        return new HpoSnapshot(id2primary, obsolete, labels, parents, diseases);
+    }
+
+    /**
+     * Get the snapshot for the given hp.obo and phenotype.hpoa files. If the cache directory already contains a
+     * snapshot for the current contents of both files, it is memory-mapped; otherwise the files are loaded with
+     * phenol and a new snapshot is written.
+     * @param hpoPath path to hp.obo
+     * @param phenotypeAnnotationPath path to phenotype.hpoa
+     * @param cacheDirectory directory for snapshot files, or {@code null} to always load the source files
+     */
+    static HpoSnapshot load(String hpoPath, String phenotypeAnnotationPath, String cacheDirectory) {
+        String hash;
+        try {
+            hash = contentHash(Paths.get(hpoPath), Paths.get(phenotypeAnnotationPath));
+        } catch (IOException e) {
+            throw new PhenolRuntimeException("Could not read " + hpoPath + " or " + phenotypeAnnotationPath);
+        }
+        if (cacheDirectory == null) {
+            HpoSnapshot snapshot = loadFromSource(hpoPath, phenotypeAnnotationPath);
+            snapshot.contentHash = hash;
+            return snapshot;
+        }
+        Path snapshotPath = Paths.get(cacheDirectory, "countpp-" + hash + ".snapshot");
+        if (Files.isRegularFile(snapshotPath)) {
+            try {
+                HpoSnapshot snapshot = read(snapshotPath);
+                snapshot.contentHash = hash;
+                logger.info("Loaded HPO snapshot from {}", snapshotPath);
+                return snapshot;
+            } catch (IOException e) {
+                logger.warn("Could not read HPO snapshot at {} ({}); rebuilding it", snapshotPath, e.getMessage());
+            }
+        }
+        HpoSnapshot snapshot = loadFromSource(hpoPath, phenotypeAnnotationPath);
+        snapshot.contentHash = hash;
+        try {
+            snapshot.write(snapshotPath);
+            logger.info("Wrote HPO snapshot to {}", snapshotPath);
+        } catch (IOException e) {
+            logger.warn("Could not write HPO snapshot to {}: {}", snapshotPath, e.getMessage());
+        }
+        return snapshot;
+    }
+
+    private static HpoSnapshot loadFromSource(String hpoPath, String phenotypeAnnotationPath) {
+        Ontology ontology = OntologyLoader.loadOntology(new File(hpoPath));
+        Map<TermId, HpoDisease> diseaseMap = HpoDiseaseAnnotationParser.loadDiseaseMap(phenotypeAnnotationPath, ontology);
+        return fromOntology(ontology, diseaseMap);
+    }
+
+    boolean containsTerm(TermId tid) {
+        return id2primary.containsKey(tid);
+    }
+
+    boolean isObsolete(TermId tid) {
+        return obsoleteTermIds.contains(tid);
+    }
+
+    /** @return the primary (current) id of a term of the term map. */
+    TermId getPrimaryTermId(TermId tid) {
+        return id2primary.get(tid);
+    }
+
+    /** @return the label of a term (or of its primary term), or the id itself if it is not part of the term map. */
+    String getTermLabel(TermId tid) {
+        TermId primary = id2primary.getOrDefault(tid, tid);
+        return labels.getOrDefault(primary, tid.getValue());
+    }
+
+    /** @return the inheritance category of a disease ({@link InheritanceCategory#UNKNOWN_DISEASE} if not in phenotype.hpoa) */
+    InheritanceCategory getInheritanceCategory(TermId diseaseId) {
+        int i = diseaseIndex.indexOf(diseaseId);
+        return i < 0 ? InheritanceCategory.UNKNOWN_DISEASE : diseaseCategories[i];
+    }
+
+    AncestorIndex getAncestorIndex() {
+        return ancestorIndex;
+    }
+
+    /**
+     * @return map of diseases that contains the name and the modes of inheritance of each disease
+     * (phenotype annotations are not part of the snapshot).
+     */
+    Map<TermId, HpoDisease> getDiseaseMap() {
+        return diseaseMap;
+    }
+
+    /** @return SHA-256 of the contents of hp.obo and phenotype.hpoa (empty if built with {@link #fromOntology}). */
+    String getContentHash() {
+        return contentHash;
+    }
+
+    TermIndex getHpoTermIndex() {
+        return hpoTermIndex;
+    }
+
+    TermIndex getDiseaseIndex() {
+        return diseaseIndex;
+    }
+
+    /**
+     * SHA-256 of the contents of the source files, as hex string. The length of each file is hashed before its
+     * contents, so that moving bytes from the end of one file to the start of the next gives another hash.
+     */
+    private static String contentHash(Path... paths) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new PhenolRuntimeException("SHA-256 not available");
+        }
+        byte[] buffer = new byte[1 << 16];
+        for (Path path : paths) {
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(Files.size(path)).array());
+            try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+                while (in.read(buffer) != -1) {
+                    // the digest is updated by the stream
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Layout of the snapshot file (all numbers big-endian):
+     * int magic, int version,
+     * int n_terms, n_terms x (string id, int index of primary id or -1, byte obsolete, string label,
+     *     int n_parents, n_parents x int index of parent),
+     * int n_diseases, n_diseases x (string id, string name, int n_moi, n_moi x int index of term),
+     * ancestor closure over the sorted term index (see AncestorIndex#write).
+     * Strings are stored as int length followed by UTF-8 bytes.
+     */
+
+    private void write(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Map<TermId, Integer> index = new HashMap<>();
+        List<TermId> terms = new ArrayList<>();
+        for (TermId tid : id2primary.keySet()) {
+            index.put(tid, terms.size());
+            terms.add(tid);
+        }
+        for (HpoDisease disease : diseaseMap.values()) {
+            for (TermId moi : disease.getModesOfInheritance()) {
+                if (! index.containsKey(moi)) {
+                    index.put(moi, terms.size());
+                    terms.add(moi);
+                }
+            }
+        }
+        Path tmp = TempFiles.create(path.toAbsolutePath().getParent(), "countpp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(terms.size());
+                for (TermId tid : terms) {
+                    writeString(out, tid.getValue());
+                    TermId primary = id2primary.get(tid);
+                    // -1 marks mode-of-inheritance ids that are not part of the term map
+                    out.writeInt(primary == null ? -1 : index.getOrDefault(primary, index.get(tid)));
+                    out.writeByte(obsoleteTermIds.contains(tid) ? 1 : 0);
+                    writeString(out, labels.getOrDefault(tid, ""));
+                    List<TermId> termParents = parents.getOrDefault(tid, Collections.emptyList());
+                    out.writeInt(termParents.size());
+                    for (TermId parent : termParents) {
+                        out.writeInt(index.get(parent));
+                    }
+                }
+                out.writeInt(diseaseMap.size());
+                for (HpoDisease disease : diseaseMap.values()) {
+                    writeString(out, disease.getDiseaseDatabaseId().getValue());
+                    writeString(out, disease.getName());
+                    out.writeInt(disease.getModesOfInheritance().size());
+                    for (TermId moi : disease.getModesOfInheritance()) {
+                        out.writeInt(index.get(moi));
+                    }
+                }
+                ancestorIndex.write(out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private static HpoSnapshot read(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("not a snapshot file of the current version");
+            }
+            int n = buffer.getInt();
+            TermId[] terms = new TermId[n];
+            int[] primaryIndex = new int[n];
+            boolean[] obsolete = new boolean[n];
+            String[] termLabels = new String[n];
+            int[][] parentIndex = new int[n][];
+            for (int i = 0; i < n; i++) {
+                terms[i] = TermId.of(readString(buffer));
+                primaryIndex[i] = buffer.getInt();
+                obsolete[i] = buffer.get() != 0;
+                termLabels[i] = readString(buffer);
+                parentIndex[i] = new int[buffer.getInt()];
+                for (int j = 0; j < parentIndex[i].length; j++) {
+                    parentIndex[i][j] = buffer.getInt();
+                }
+            }
+            Map<TermId, TermId> id2primary = new HashMap<>();
+            Set<TermId> obsoleteTermIds = new HashSet<>();
+            Map<TermId, String> labels = new HashMap<>();
+            Map<TermId, List<TermId>> parents = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (primaryIndex[i] >= 0) {
+                    id2primary.put(terms[i], terms[primaryIndex[i]]);
+                }
+                if (obsolete[i]) {
+                    obsoleteTermIds.add(terms[i]);
+                }
+                if (! termLabels[i].isEmpty()) {
+                    labels.put(terms[i], termLabels[i]);
+                }
+                if (parentIndex[i].length > 0) {
+                    List<TermId> termParents = new ArrayList<>(parentIndex[i].length);
+                    for (int j : parentIndex[i]) {
+                        termParents.add(terms[j]);
+                    }
+                    parents.put(terms[i], termParents);
+                }
+            }
+            int nDiseases = buffer.getInt();
+            Map<TermId, HpoDisease> diseaseMap = new HashMap<>();
+            for (int i = 0; i < nDiseases; i++) {
+                TermId diseaseId = TermId.of(readString(buffer));
+                String name = readString(buffer);
+                int nMoi = buffer.getInt();
+                List<TermId> moi = new ArrayList<>(nMoi);
+                for (int j = 0; j < nMoi; j++) {
+                    moi.add(terms[buffer.getInt()]);
+                }
+                diseaseMap.put(diseaseId, makeDisease(name, diseaseId, moi));
+            }
+            return new HpoSnapshot(id2primary, obsoleteTermIds, labels, parents, diseaseMap, buffer);
+        } catch (RuntimeException e) {
+            // e.g., BufferUnderflowException for a truncated file
+            throw new IOException("corrupt snapshot file: " + e, e);
+        }
+    }
+
+    private static HpoDisease makeDisease(String name, TermId diseaseId, List<TermId> modesOfInheritance) {
+        List<TermId> moi = modesOfInheritance == null ? ImmutableList.of() : ImmutableList.copyOf(modesOfInheritance);
+        return new HpoDisease(name, diseaseId, ImmutableList.of(), moi,
+                ImmutableList.of(), ImmutableList.of(), ImmutableList.of());
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,86 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.formats.hpo.HpoModeOfInheritanceTermIds;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.List;
+
+/**
+ * Categories of the mode of inheritance of a disease that are used in the summary of a count. The category of
+ * each disease is determined once when the {@link HpoSnapshot} is loaded, so that counting a phenopacket only
+ * needs a lookup by the index of its disease.
+ * @author Peter Robinson
+ */
+enum InheritanceCategory {
+    AUTOSOMAL_RECESSIVE("autosomalRecessive"),
+    AUTOSOMAL_DOMINANT("autosomalDominant"),
+    X_CHROMOSOMAL("xChromosomal"),
+    HETEROGENEOUS("heterogeneous"),
+    SOMATIC("somatic"),
+    SOMATIC_MOSAIC("somaticMosaic"),
+    SPORADIC("sporadic"),
+    /** More than one mode of inheritance. */
+    MULTIPLE("multiple"),
+    /** The disease has no mode of inheritance in phenotype.hpoa. */
+    NONE("none"),
+    /** A single mode of inheritance that is not one of the categories above; such diseases cannot be counted. */
+    UNSUPPORTED("unsupported"),
+    /** The disease is not part of phenotype.hpoa. */
+    UNKNOWN_DISEASE("unknownDisease");
+
+    /** Name used in the JSON summary. */
+    private final String key;
+
+    InheritanceCategory(String key) {
+        this.key = key;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    /** @return the category with the given {@link #getKey() key} */
+    static InheritanceCategory ofKey(String key) {
+        for (InheritanceCategory category : values()) {
+            if (category.key.equals(key)) {
+                return category;
+            }
+        }
+        throw new IllegalArgumentException("Unknown inheritance category " + key);
+    }
+
+    /** @param disease a disease of phenotype.hpoa, or {@code null} for an unknown disease */
+    static InheritanceCategory of(HpoDisease disease) {
+        if (disease == null) {
+            return UNKNOWN_DISEASE;
+        }
+        List<TermId> inheritance = disease.getModesOfInheritance();
+        if (inheritance == null || inheritance.isEmpty()) {
+            return NONE;
+        }
+        if (inheritance.size() > 1) {
+            return MULTIPLE;
+        }
+        TermId id = inheritance.get(0);
+        if (id.equals(HpoModeOfInheritanceTermIds.AUTOSOMAL_RECESSIVE)) {
+            return AUTOSOMAL_RECESSIVE;
+        } else if (id.equals(HpoModeOfInheritanceTermIds.AUTOSOMAL_DOMINANT)
+                || id.equals(HpoModeOfInheritanceTermIds.CONTIGUOUS_GENE_SYNDROME_AUTOSOMAL_DOMINANT)) {
+            return AUTOSOMAL_DOMINANT;
+        } else if (id.equals(HpoModeOfInheritanceTermIds.X_LINKED)
+                || id.equals(HpoModeOfInheritanceTermIds.X_LINKED_RECESSIVE)
+                || id.equals(HpoModeOfInheritanceTermIds.X_LINKED_DOMINANT)) {
+            return X_CHROMOSOMAL;
+        } else if (id.equals(HpoModeOfInheritanceTermIds.HETEROGENEOUS)) {
+            return HETEROGENEOUS;
+        } else if (id.equals(HpoModeOfInheritanceTermIds.SOMATIC_MUTATION)) {
+            return SOMATIC;
+        } else if (id.equals(HpoModeOfInheritanceTermIds.SPORADIC)) {
+            return SPORADIC;
+        } else if (id.equals(HpoModeOfInheritanceTermIds.SOMATIC_MOSAICISM)) {
+            return SOMATIC_MOSAIC;
+        }
+        return UNSUPPORTED;
+    }
+}
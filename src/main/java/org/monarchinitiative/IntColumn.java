@@ -0,0 +1,40 @@
+package org.monarchinitiative;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of {@code int} values, used for the columns of the {@link CorpusIndex}. Not thread-safe.
+ * @author Peter Robinson
+ */
+final class IntColumn {
+    private int[] values;
+    private int size = 0;
+
+    IntColumn() {
+        this(16);
+    }
+
+    IntColumn(int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        values[size++] = value;
+    }
+
+    int get(int i) {
+        return values[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** @return a copy of the values */
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,110 @@
+package org.monarchinitiative;
+
+import java.util.Arrays;
+
+/**
+ * Exact {@link StatisticsAccumulator} for small non-negative integers. Instead of keeping every value,
+ * we keep the number of times each value was seen, so that memory depends only on the largest value
+ * (a phenopacket has at most a few dozen terms), not on the number of phenopackets.
+ * @author Peter Robinson
+ */
+final class IntHistogram implements StatisticsAccumulator {
+    /** counts[v] is the number of times the value v was added. */
+    private long[] counts = new long[32];
+    private long n = 0;
+    private long sum = 0;
+    private int max = -1;
+
+    @Override
+    public void addValue(int value) {
+        add(value, 1);
+    }
+
+    /** Add the value {@code times} times. */
+    void add(int value, long times) {
+        if (value < 0) {
+            throw new IllegalArgumentException("IntHistogram only accepts non-negative values but got " + value);
+        }
+        if (value >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(2 * counts.length, value + 1));
+        }
+        counts[value] += times;
+        n += times;
+        sum += value * times;
+        max = Math.max(max, value);
+    }
+
+    @Override
+    public void merge(StatisticsAccumulator other) {
+        IntHistogram h = (IntHistogram) other;
+        for (int v = 0; v <= h.max; v++) {
+            if (h.counts[v] > 0) {
+                add(v, h.counts[v]);
+            }
+        }
+    }
+
+    @Override
+    public long getN() {
+        return n;
+    }
+
+    @Override
+    public double getMean() {
+        return n == 0 ? Double.NaN : (double) sum / n;
+    }
+
+    @Override
+    public double getMin() {
+        return n == 0 ? Double.NaN : valueAt(0);
+    }
+
+    @Override
+    public double getMax() {
+        return n == 0 ? Double.NaN : max;
+    }
+
+    /** Count of each value 0..max, used to serialize the histogram. */
+    long[] getCounts() {
+        return Arrays.copyOf(counts, max + 1);
+    }
+
+    @Override
+    public double getPercentile(double p) {
+        if (p <= 0 || p > 100) {
+            throw new IllegalArgumentException("percentile must be in (0,100] but was " + p);
+        }
+        if (n == 0) {
+            return Double.NaN;
+        }
+        if (n == 1) {
+            return valueAt(0);
+        }
+        double quantile = p / 100;
+        double pos = quantile == 1d ? n : quantile * (n + 1);
+        double fpos = Math.floor(pos);
+        long intPos = (long) fpos;
+        double dif = pos - fpos;
+        if (pos < 1) {
+            return valueAt(0);
+        }
+        if (pos >= n) {
+            return valueAt(n - 1);
+        }
+        double lower = valueAt(intPos - 1);
+        double upper = valueAt(intPos);
+        return lower + dif * (upper - lower);
+    }
+
+    /** @return the k-th smallest value (0-based). */
+    private int valueAt(long k) {
+        long seen = 0;
+        for (int v = 0; v <= max; v++) {
+            seen += counts[v];
+            if (seen > k) {
+                return v;
+            }
+        }
+        return max;
+    }
+}
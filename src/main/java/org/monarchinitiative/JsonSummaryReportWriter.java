@@ -0,0 +1,41 @@
+package org.monarchinitiative;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the {@link CountSummary} of a run as a JSON object; the individual rows are not written.
+ * @author Peter Robinson
+ */
+final class JsonSummaryReportWriter implements ReportWriter {
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final Writer writer;
+
+    JsonSummaryReportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeHeader() {
+        // nothing to do
+    }
+
+    @Override
+    public void writeRow(TableRow row) {
+        // only the summary is written
+    }
+
+    @Override
+    public void writeSummary(CountSummary summary) throws IOException {
+        writer.write(MAPPER.writeValueAsString(summary.toMap()));
+        writer.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,63 @@
+package org.monarchinitiative;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of durations in nanoseconds with logarithmic (power of two) buckets. Recording a value
+ * costs a few atomic increments and no allocation; percentiles are approximate (the upper bound of the bucket,
+ * i.e., at most a factor of two too large).
+ * @author Peter Robinson
+ */
+final class LatencyHistogram {
+    /** buckets[i] counts the durations d with 2^(i-1) <= d < 2^i (bucket 0: d == 0). */
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    void record(long nanos) {
+        long d = Math.max(0L, nanos);
+        buckets.incrementAndGet(Math.min(63, 64 - Long.numberOfLeadingZeros(d)));
+        count.increment();
+        sum.add(d);
+        max.accumulate(d);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    /** @param p percentile between 0 and 100 */
+    long getPercentileNanos(double p) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return i == 0 ? 0L : Math.min(max.get(), (1L << i) - 1);
+            }
+        }
+        return max.get();
+    }
+
+    /** @return count, mean, percentiles and maximum in microseconds */
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        long n = count.sum();
+        map.put("count", n);
+        map.put("meanMicros", n == 0 ? 0.0 : sum.sum() / 1000.0 / n);
+        map.put("p50Micros", getPercentileNanos(50) / 1000.0);
+        map.put("p90Micros", getPercentileNanos(90) / 1000.0);
+        map.put("p99Micros", getPercentileNanos(99) / 1000.0);
+        map.put("maxMicros", max.get() / 1000.0);
+        return map;
+    }
+}
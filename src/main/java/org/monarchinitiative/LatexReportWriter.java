@@ -0,0 +1,58 @@
+package org.monarchinitiative;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the rows as a LaTeX longtable (the supplemental table). Rows are rendered by a {@link TableFormatter}
+ * into a reusable {@link StringBuilder} rather than with {@code String.format}; LaTeX special characters in
+ * the names are escaped.
+ * @author Peter Robinson
+ */
+final class LatexReportWriter implements ReportWriter {
+    private final Writer writer;
+    private final StringBuilder sb = new StringBuilder(128);
+    private final TableFormatter formatter = new TableFormatter();
+
+    LatexReportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeHeader() throws IOException {
+        writer.write("\\begin{longtable}{|p{8cm}|p{2cm}|p{2cm}|p{1cm}|l|}\n" +
+                "\\caption{Phenopackets analyzed in this work}  \\label{table:phenopackets} \\\\\n" +
+                "\\hline\n" +
+                "\\textbf{Disease} & \\textbf{Gene} & \\textbf{Proband} & \\textbf{n. HPO terms}& \\textbf{Publication} \\\\\n" +
+                "\\hline\n" +
+                "\\endfirsthead\n" +
+                "\\multicolumn{5}{c}%\n" +
+                "{\\tablename\\ \\thetable\\ -- \\textit{Continued from previous page}} \\\\\n" +
+                "\\hline\n" +
+                "\\textbf{Disease} & \\textbf{Gene} & \\textbf{Proband} & \\textbf{n. HPO terms}& \\textbf{Publication} \\\\\n" +
+                "\\hline\n" +
+                "\\endhead\n" +
+                "\\hline \\multicolumn{5}{r}{\\textit{Continued on next page}} \\\\\n" +
+                "\\endfoot\n" +
+                "\\hline\n" +
+                "\\endlastfoot \n");
+    }
+
+    @Override
+    public void writeRow(TableRow row) throws IOException {
+        sb.setLength(0);
+        formatter.appendLatexRow(sb, row);
+        writer.append(sb);
+    }
+
+    @Override
+    public void writeSummary(CountSummary summary) {
+        // the summary is not part of the table
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.write("\\end{longtable}\n");
+        writer.close();
+    }
+}
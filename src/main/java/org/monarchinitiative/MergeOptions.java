@@ -0,0 +1,47 @@
+package org.monarchinitiative;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Options of the {@code merge} command, which combines the {@link PartialCounts} of the shards of a corpus
+ * into the table and summary of a single run.
+ * @author Peter Robinson
+ */
+@Parameters(commandNames = MergeOptions.COMMAND, commandDescription = "merge the partial results of sharded runs (--shard/--partial)")
+class MergeOptions {
+    static final String COMMAND = "merge";
+
+    @Parameter(names = {"-h", "--help"}, help = true, description = "display this help message")
+    boolean help;
+
+    @Parameter(description = "partial result files", required = true)
+    List<String> partialPaths = new ArrayList<>();
+
+    @Parameter(names = {"--hpo"}, required = true, description = "path to hp.obo (the same as for the shards)")
+    String hpoPath;
+
+    @Parameter(names = {"-a", "--annotations"}, required = true, description = "path to phenotype.hpoa (the same as for the shards)")
+    String phenotypeAnnotationPath;
+
+    @Parameter(names = {"-o", "--out"}, description = "name of the LaTeX output file")
+    String outPath = "phenopacketstats.tex";
+
+    @Parameter(names = {"--tsv"}, description = "optional output file for the table as tab-separated values")
+    String tsvPath;
+
+    @Parameter(names = {"--json"}, description = "optional output file for the summary statistics as JSON")
+    String jsonPath;
+
+    @Parameter(names = {"--term-table"}, description = "optional output file for the exact and ancestor-propagated counts of each HPO term (TSV)")
+    String termTablePath;
+
+    @Parameter(names = {"--snapshot-dir"}, description = "directory for cached binary snapshots of hp.obo and phenotype.hpoa")
+    String snapshotDirectory = ".countpp";
+
+    @Parameter(names = {"--no-snapshot"}, description = "always load hp.obo and phenotype.hpoa with phenol")
+    boolean noSnapshot;
+}
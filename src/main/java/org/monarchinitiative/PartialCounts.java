@@ -0,0 +1,176 @@
+package org.monarchinitiative;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.Hashing;
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Partial result of a sharded run: the phenopackets of a corpus are split into {@code n} shards by a hash of
+ * their path (see {@link #shardOf(String, int)}), each shard is counted separately (e.g., on another node of a
+ * batch cluster), and the partial results are combined with {@link #merge} into the same table and summary as a
+ * run over the whole corpus. A partial result is stored as JSON lines: a header with the format version, the
+ * content hash of the ontology and the shard, the merged counts (disease, term and propagated term counts,
+ * genes, statistics), and one line per {@link PhenopacketRecord} for the rows of the table.
+ * @author Peter Robinson
+ */
+final class PartialCounts {
+    private static final Logger logger = LoggerFactory.getLogger(PartialCounts.class);
+    private static final int FORMAT_VERSION = 1;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private PartialCounts() {
+    }
+
+    /**
+     * @param path path of a phenopacket file relative to the phenopacket directory, with '/' as separator
+     * @return the shard (0 .. shards - 1) of the file; the same on every machine and JVM
+     */
+    static int shardOf(String path, int shards) {
+        return Math.floorMod(Hashing.murmur3_32().hashString(path, StandardCharsets.UTF_8).asInt(), shards);
+    }
+
+    static void save(Path path, String ontologyHash, int shard, int shards, PhenopacketCounts counts)
+            throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = TempFiles.create(dir, "partial");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(MAPPER.createObjectNode()
+                        .put("version", FORMAT_VERSION)
+                        .put("ontology", ontologyHash)
+                        .put("shard", shard)
+                        .put("shards", shards).toString());
+                writer.write('\n');
+                ObjectNode node = MAPPER.createObjectNode();
+                node.set("diseases", toJson(counts.disease2count));
+                node.set("terms", toJson(counts.hpo2count));
+                node.set("propagated", toJson(counts.propagated));
+                node.set("genes", toJson(counts.genes));
+                ObjectNode genesByInheritance = node.putObject("genesByInheritance");
+                counts.genesByInheritance.forEach((category, genes) ->
+                        genesByInheritance.set(category.getKey(), toJson(genes)));
+                node.set("termsPerPhenopacket", toJson((IntHistogram) counts.termsPerPhenopacket));
+                node.set("negatedTermsPerPhenopacket", toJson((IntHistogram) counts.negatedTermsPerPhenopacket));
+                writer.write(node.toString());
+                writer.write('\n');
+                for (PhenopacketRecord record : counts.records.values()) {
+                    writer.write(PhenopacketManifest.RECORD_WRITER.writeValueAsString(record));
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Combine partial results into the counts of the whole corpus.
+     * @throws PhenolRuntimeException if a partial result was created with other ontology files, has another
+     * number of shards or an invalid shard, or if a shard is given twice
+     */
+    static PhenopacketCounts merge(List<Path> paths, HpoSnapshot ontology) throws IOException {
+        PhenopacketCounts total = new PhenopacketCounts(ontology);
+        BitSet seen = new BitSet();
+        int shards = -1;
+        for (Path path : paths) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                JsonNode header = line == null ? MissingNode.getInstance() : MAPPER.readTree(line);
+                if (header.path("version").asInt() != FORMAT_VERSION) {
+                    throw new PhenolRuntimeException(path + " is not a partial result of the current version");
+                }
+                if (! header.path("ontology").asText().equals(ontology.getContentHash())) {
+                    throw new PhenolRuntimeException(path + " was created with another version of the ontology");
+                }
+                int shard = header.path("shard").asInt();
+                if (shards >= 0 && header.path("shards").asInt() != shards) {
+                    throw new PhenolRuntimeException(path + " has another number of shards");
+                }
+                shards = header.path("shards").asInt();
+                if (shards < 1 || shard < 0 || shard >= shards) {
+                    throw new PhenolRuntimeException(path + " has an invalid shard " + shard + " of " + shards);
+                }
+                if (seen.get(shard)) {
+                    throw new PhenolRuntimeException("Shard " + shard + " is given twice (" + path + ")");
+                }
+                seen.set(shard);
+                PhenopacketCounts counts = new PhenopacketCounts(ontology);
+                JsonNode node = MAPPER.readTree(reader.readLine());
+                addCounts(counts.disease2count, node.path("diseases"));
+                addCounts(counts.hpo2count, node.path("terms"));
+                addCounts(counts.propagated, node.path("propagated"));
+                addStrings(counts.genes, node.path("genes"));
+                node.path("genesByInheritance").fields().forEachRemaining(e -> addStrings(
+                        counts.genesByInheritance.computeIfAbsent(InheritanceCategory.ofKey(e.getKey()),
+                                c -> new HashSet<>()), e.getValue()));
+                addHistogram((IntHistogram) counts.termsPerPhenopacket, node.path("termsPerPhenopacket"));
+                addHistogram((IntHistogram) counts.negatedTermsPerPhenopacket, node.path("negatedTermsPerPhenopacket"));
+                while ((line = reader.readLine()) != null) {
+                    PhenopacketRecord record = PhenopacketManifest.RECORD_READER.readValue(line);
+                    counts.records.put(record.getPath(), record);
+                }
+                total.merge(counts);
+            }
+        }
+        if (seen.cardinality() != shards) {
+            logger.warn("Merged {} of {} shards; the counts are incomplete", seen.cardinality(), shards);
+        }
+        return total;
+    }
+
+    private static ObjectNode toJson(TermCounter counter) {
+        ObjectNode node = MAPPER.createObjectNode();
+        counter.forEach((tid, c) -> node.put(tid.getValue(), c));
+        return node;
+    }
+
+    private static ArrayNode toJson(Set<String> strings) {
+        ArrayNode node = MAPPER.createArrayNode();
+        new TreeSet<>(strings).forEach(node::add);
+        return node;
+    }
+
+    /** The histogram is stored as the count of each value 0..max. */
+    private static ArrayNode toJson(IntHistogram histogram) {
+        ArrayNode node = MAPPER.createArrayNode();
+        for (long c : histogram.getCounts()) {
+            node.add(c);
+        }
+        return node;
+    }
+
+    private static void addCounts(TermCounter counter, JsonNode node) {
+        node.fields().forEachRemaining(e -> counter.add(TermId.of(e.getKey()), e.getValue().asInt()));
+    }
+
+    private static void addStrings(Set<String> strings, JsonNode node) {
+        node.forEach(s -> strings.add(s.asText()));
+    }
+
+    private static void addHistogram(IntHistogram histogram, JsonNode node) {
+        for (int v = 0; v < node.size(); v++) {
+            if (node.get(v).asLong() > 0) {
+                histogram.add(v, node.get(v).asLong());
+            }
+        }
+    }
+}
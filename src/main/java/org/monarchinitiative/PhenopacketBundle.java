@@ -0,0 +1,127 @@
+package org.monarchinitiative;
+
+import com.google.common.io.CountingOutputStream;
+import com.google.protobuf.CodedInputStream;
+import org.phenopackets.schema.v1.Phenopacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A packet bundle (extension {@code .ppb}) holds many phenopackets in one file as length-delimited binary
+ * protobuf messages, as written by {@link Phenopacket#writeDelimitedTo(OutputStream)}. Reading a bundle avoids
+ * opening one file per phenopacket and parsing JSON text. Bundles are read sequentially through a file channel
+ * with a large buffer, so there is no limit on the size of a bundle.
+ * @author Peter Robinson
+ */
+final class PhenopacketBundle {
+    private static final Logger logger = LoggerFactory.getLogger(PhenopacketBundle.class);
+    static final String EXTENSION = ".ppb";
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private PhenopacketBundle() {
+    }
+
+    /**
+     * Pass each phenopacket of a bundle to the consumer. The messages are not parsed here; their index in the
+     * bundle is used as the entry name (see {@link PhenopacketSource#ofBundleEntry}).
+     */
+    static void read(Path bundle, BasicFileAttributes attributes, Consumer<PhenopacketSource> consumer) throws IOException {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        try (FileChannel channel = FileChannel.open(bundle, StandardOpenOption.READ)) {
+            CodedInputStream in = CodedInputStream.newInstance(Channels.newInputStream(channel), BUFFER_SIZE);
+            in.setSizeLimit(Integer.MAX_VALUE);
+            int index = 0;
+            while (! in.isAtEnd()) {
+                byte[] message = in.readByteArray();
+                consumer.accept(PhenopacketSource.ofBundleEntry(bundle, index++, lastModified, message));
+                // the size limit applies to the bytes read since the last reset, not to each message
+                in.resetSizeCounter();
+            }
+        }
+    }
+
+    /**
+     * Convert the phenopackets found by the discovery into a bundle. The phenopackets are written in the order
+     * of their paths, so that a count of the bundle lists them in the same order as a count of the directory.
+     * To sort them without keeping the corpus in memory, the messages are first spooled to a temporary file in
+     * the order of discovery, and then copied from there in the order of their paths; only the paths and the
+     * positions of the messages in the spool file are kept.
+     * @return number of phenopackets written
+     */
+    static int convert(PhenopacketDiscovery discovery, Path out) throws IOException {
+        Path dir = out.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path spool = TempFiles.create(dir, "bundle");
+        Path tmp = TempFiles.create(dir, "bundle");
+        try {
+            List<SpooledMessage> messages = new ArrayList<>();
+            try (CountingOutputStream os = new CountingOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(spool), BUFFER_SIZE))) {
+                discovery.discover(source -> {
+                    try {
+                        byte[] contents = source.read();
+                        Phenopacket phenopacket = source.isProtobuf() ? Phenopacket.parseFrom(contents)
+                                : PhenopacketImporter.parseJson(contents);
+                        long offset = os.getCount();
+                        phenopacket.writeDelimitedTo(os);
+                        messages.add(new SpooledMessage(source.getPath(), offset, os.getCount() - offset));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            messages.sort(Comparator.comparing(m -> m.path));
+            try (FileChannel in = FileChannel.open(spool, StandardOpenOption.READ);
+                 FileChannel os = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                for (SpooledMessage message : messages) {
+                    long position = message.offset;
+                    long end = message.offset + message.length;
+                    while (position < end) {
+                        position += in.transferTo(position, end - position, os);
+                    }
+                    logger.debug("Added {} to {}", message.path, out);
+                }
+            }
+            Files.delete(spool);
+            Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return messages.size();
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(spool);
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spool);
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /** Path of a phenopacket and position of its (length-delimited) message in the spool file. */
+    private static final class SpooledMessage {
+        private final String path;
+        private final long offset;
+        private final long length;
+
+        SpooledMessage(String path, long offset, long length) {
+            this.path = path;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
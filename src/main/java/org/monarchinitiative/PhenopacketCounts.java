@@ -0,0 +1,145 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Aggregated counts for a collection of phenopackets. A scan adds the records to a single instance on one
+ * thread (the workers only parse); the partial results of a sharded run are combined with
+ * {@link #merge(PhenopacketCounts)} (see {@link PartialCounts}).
+ * The {@link PhenopacketRecord}s are keyed by the path of the phenopacket file so that the order of the
+ * table rows does not depend on the order in which the files were processed.
+ * @author Peter Robinson
+ */
+class PhenopacketCounts {
+    private static final Logger logger = LoggerFactory.getLogger(PhenopacketCounts.class);
+
+    private final HpoSnapshot snapshot;
+
+    final TermCounter disease2count;
+
+    final TermCounter hpo2count;
+    /**
+     * Number of phenopackets with at least one observed term that is the term itself or one of its
+     * descendants (i.e., counts propagated to all ancestors; each phenopacket counts at most once per term).
+     */
+    final TermCounter propagated;
+
+    private final AncestorIndex ancestorIndex;
+    /** Scratch bitset over the term index with the ancestors of the terms of the current phenopacket. */
+    private final long[] ancestorBits;
+
+    final Set<String> genes = new HashSet<>();
+    /** Genes of the phenopackets with a disease of each inheritance category. */
+    final Map<InheritanceCategory, Set<String>> genesByInheritance = new EnumMap<>(InheritanceCategory.class);
+
+    final StatisticsAccumulator termsPerPhenopacket = new IntHistogram();
+    final StatisticsAccumulator negatedTermsPerPhenopacket = new IntHistogram();
+    /** Contribution of each phenopacket file, sorted by the path of the file. */
+    final SortedMap<String, PhenopacketRecord> records = new TreeMap<>();
+
+    PhenopacketCounts(HpoSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.disease2count = new TermCounter(snapshot.getDiseaseIndex());
+        this.hpo2count = new TermCounter(snapshot.getHpoTermIndex());
+        this.propagated = new TermCounter(snapshot.getHpoTermIndex());
+        this.ancestorIndex = snapshot.getAncestorIndex();
+        this.ancestorBits = new long[ancestorIndex.bitsetWords()];
+    }
+
+
+    /** Add the contribution of one phenopacket file. */
+    void add(PhenopacketRecord record) {
+        InheritanceCategory category = recordDiagnosis(record.getDiseaseId());
+        recordPhenotypes(record.getTermIds(), record.getNegatedTermIds());
+        this.genes.add(record.getGeneId());
+        this.genesByInheritance.computeIfAbsent(category, c -> new HashSet<>()).add(record.getGeneId());
+        this.records.put(record.getPath(), record);
+    }
+
+    void recordPhenotypes(List<TermId> ids, List<TermId> negated) {
+        termsPerPhenopacket.addValue(ids.size());
+        negatedTermsPerPhenopacket.addValue(negated.size());
+        for (TermId tid : ids) {
+            this.hpo2count.increment(tid);
+        }
+        for (TermId tid : negated) {
+            this.hpo2count.increment(tid);
+        }
+        propagate(ids);
+    }
+
+    /** Count each ancestor of the observed terms of one phenopacket once. */
+    private void propagate(List<TermId> ids) {
+        TermIndex index = ancestorIndex.getTermIndex();
+        for (TermId tid : ids) {
+            int i = index.indexOf(tid);
+            if (i >= 0) {
+                ancestorIndex.addAncestors(i, ancestorBits);
+            } else {
+                this.propagated.increment(tid);
+            }
+        }
+        for (int w = 0; w < ancestorBits.length; w++) {
+            long word = ancestorBits[w];
+            while (word != 0L) {
+                this.propagated.incrementAt((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+            ancestorBits[w] = 0L;
+        }
+    }
+
+    /**
+     * Count the disease of a phenopacket. The number of phenopackets per inheritance category is not counted here
+     * but derived from the disease counts by {@link #getInheritanceCounts()}.
+     * @return the inheritance category of the disease
+     * @throws PhenolRuntimeException if the disease has a single mode of inheritance that is not one of the
+     * counted categories; this is checked before anything is counted, so a phenopacket can be skipped
+     */
+    InheritanceCategory recordDiagnosis(TermId did) {
+        InheritanceCategory category = snapshot.getInheritanceCategory(did);
+        if (category == InheritanceCategory.UNSUPPORTED) {
+            TermId id = snapshot.getDiseaseMap().get(did).getModesOfInheritance().get(0);
+            throw new PhenolRuntimeException("Could not identify mode of inheritance " + id.getValue()
+                    + " for disease " + did.getValue());
+        }
+        this.disease2count.increment(did);
+        if (category == InheritanceCategory.UNKNOWN_DISEASE) {
+            logger.warn("Could not retrieve data for {}", did.getValue());
+        }
+        return category;
+    }
+
+    /**
+     * @return number of phenopackets per inheritance category, indexed by {@link InheritanceCategory#ordinal()};
+     * computed from the counts of the (distinct) diseases
+     */
+    int[] getInheritanceCounts() {
+        int[] n = new int[InheritanceCategory.values().length];
+        disease2count.forEach((did, c) -> n[snapshot.getInheritanceCategory(did).ordinal()] += c);
+        return n;
+    }
+
+    /**
+     * Add the counts of another (partial) result to this one.
+     * @param other counts obtained from a disjoint set of phenopackets
+     * @return this object, to allow chaining
+     */
+    PhenopacketCounts merge(PhenopacketCounts other) {
+        this.disease2count.merge(other.disease2count);
+        this.hpo2count.merge(other.hpo2count);
+        this.propagated.merge(other.propagated);
+        this.genes.addAll(other.genes);
+        other.genesByInheritance.forEach((category, genes) ->
+                this.genesByInheritance.computeIfAbsent(category, c -> new HashSet<>()).addAll(genes));
+        this.termsPerPhenopacket.merge(other.termsPerPhenopacket);
+        this.negatedTermsPerPhenopacket.merge(other.negatedTermsPerPhenopacket);
+        this.records.putAll(other.records);
+        return this;
+    }
+}
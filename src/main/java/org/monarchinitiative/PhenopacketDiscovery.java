@@ -0,0 +1,282 @@
+package org.monarchinitiative;
+
+import com.google.common.io.ByteStreams;
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Finds the phenopackets below a directory and passes each of them to a consumer as soon as it is found,
+ * so that the phenopackets can be parsed while the directory tree is still being walked; the list of all
+ * files is never built. The directory is walked with {@link Files#walkFileTree} (only the top level unless
+ * recursive). A file is used if its name or its path relative to the directory matches one of the include globs
+ * and none of the exclude globs; directories that match an exclude glob are skipped entirely. Files with the
+ * extension .pb are binary protobuf phenopackets, and {@link PhenopacketBundle}s are read message by message.
+ * If archives are enabled, zip and tar (optionally gzipped) archives are read in place, and their entries are
+ * filtered with the same globs.
+ * @author Peter Robinson
+ */
+final class PhenopacketDiscovery {
+    private static final Logger logger = LoggerFactory.getLogger(PhenopacketDiscovery.class);
+    static final List<String> DEFAULT_INCLUDES = Collections.unmodifiableList(Arrays.asList(
+            "*.json", "*.json.gz", "*.pb", "*.pb.gz", "*" + PhenopacketBundle.EXTENSION));
+    private static final int TAR_BLOCK = 512;
+
+    private final Path root;
+    private final boolean recursive;
+    private final boolean archives;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    /** With more than one shard, only the files of this shard are used (see {@link PartialCounts#shardOf}). */
+    private int shard = 0;
+    private int shards = 1;
+    /** Called for files, directories and archives that cannot be read; by default, the exception is rethrown. */
+    private BiConsumer<Path, IOException> errorHandler = (path, e) -> {
+        throw new UncheckedIOException("Could not read " + path, e);
+    };
+
+    PhenopacketDiscovery(String directory, boolean recursive, boolean archives, List<String> includes,
+                         List<String> excludes) {
+        this.root = Paths.get(directory);
+        if (! Files.isDirectory(root)) {
+            throw new PhenolRuntimeException("Could not open Phenopackets directory at " + directory);
+        }
+        this.recursive = recursive;
+        this.archives = archives;
+        this.includes = toMatchers(includes.isEmpty() ? DEFAULT_INCLUDES : includes);
+        this.excludes = toMatchers(excludes);
+    }
+
+    /** Top-level JSON files of the directory (the behaviour of the original flat listing). */
+    PhenopacketDiscovery(String directory) {
+        this(directory, false, false, DEFAULT_INCLUDES, Collections.emptyList());
+    }
+
+    /** Report unreadable files, directories and archives to the handler and continue with the next one. */
+    void setErrorHandler(BiConsumer<Path, IOException> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Only use the files whose relative path is assigned to the given shard. Archives and bundles are assigned
+     * to a shard as a whole.
+     */
+    void setShard(int shard, int shards) {
+        if (shards < 1 || shard < 0 || shard >= shards) {
+            throw new PhenolRuntimeException("Invalid shard " + shard + " of " + shards);
+        }
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    private static List<PathMatcher> toMatchers(List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String glob : globs) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        return matchers;
+    }
+
+    /**
+     * Walk the directory and pass each phenopacket to the consumer (on the calling thread).
+     * @throws UncheckedIOException if a directory, file or archive cannot be read (unless there is an error handler)
+     */
+    void discover(Consumer<PhenopacketSource> consumer) {
+        int maxDepth = recursive ? Integer.MAX_VALUE : 1;
+        try {
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (! dir.equals(root) && matchesAny(excludes, root.relativize(dir))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        try {
+                            visit(file, attrs, consumer);
+                        } catch (IOException e) {
+                            errorHandler.accept(file, e);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    errorHandler.accept(file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (e != null) {
+                        errorHandler.accept(dir, e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read phenopackets below " + root.toAbsolutePath(), e);
+        }
+    }
+
+    private void visit(Path file, BasicFileAttributes attrs, Consumer<PhenopacketSource> consumer) throws IOException {
+        Path relative = root.relativize(file);
+        if (matchesAny(excludes, relative)) {
+            return;
+        }
+        if (shards > 1 && PartialCounts.shardOf(relative.toString().replace(File.separatorChar, '/'), shards) != shard) {
+            return;
+        }
+        String name = file.getFileName().toString();
+        if (archives && name.endsWith(".zip")) {
+            logger.debug("Reading zip archive {}", file);
+            readZip(file, consumer);
+        } else if (archives && (name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz"))) {
+            logger.debug("Reading tar archive {}", file);
+            readTar(file, consumer);
+        } else if (! matchesAny(includes, relative)) {
+            return;
+        } else if (name.endsWith(PhenopacketBundle.EXTENSION)) {
+            logger.debug("Reading packet bundle {}", file);
+            PhenopacketBundle.read(file, attrs, consumer);
+        } else {
+            logger.debug("Phenopacket: \"{}\"", file);
+            consumer.accept(PhenopacketSource.ofFile(file, attrs));
+        }
+    }
+
+    /** @return true if the glob matches the path or its file name */
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        Path name = path.getFileName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path) || (name != null && matcher.matches(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean acceptEntry(String entryName) {
+        Path path = Paths.get(entryName);
+        return matchesAny(includes, path) && ! matchesAny(excludes, path);
+    }
+
+    private void readZip(Path archive, Consumer<PhenopacketSource> consumer) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive)))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (! entry.isDirectory() && acceptEntry(entry.getName())) {
+                    byte[] contents = ByteStreams.toByteArray(zip);
+                    consumer.accept(PhenopacketSource.ofArchiveEntry(archive, entry.getName(), entry.getTime(), contents));
+                }
+            }
+        }
+    }
+
+    /**
+     * Minimal reader for POSIX (ustar) and GNU tar archives: regular files are read, GNU long names are
+     * supported, and all other entry types (directories, links, pax headers) are skipped.
+     */
+    private void readTar(Path archive, Consumer<PhenopacketSource> consumer) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(archive));
+        if (! archive.getFileName().toString().endsWith(".tar")) {
+            in = new GZIPInputStream(in);
+        }
+        try (InputStream tar = in) {
+            byte[] header = new byte[TAR_BLOCK];
+            String longName = null;
+            while (true) {
+                if (! readBlock(tar, header) || header[0] == 0) {
+                    return; // end of archive
+                }
+                long size = parseOctal(header, 124, 12);
+                long mtime = parseOctal(header, 136, 12) * 1000L;
+                char type = (char) header[156];
+                String name = longName != null ? longName : tarName(header);
+                longName = null;
+                long padding = (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+                if (type == 'L') {
+                    byte[] data = readFully(tar, size);
+                    longName = cString(data, 0, data.length);
+                } else if ((type == '0' || type == 0) && acceptEntry(name)) {
+                    consumer.accept(PhenopacketSource.ofArchiveEntry(archive, name, mtime, readFully(tar, size)));
+                } else {
+                    ByteStreams.skipFully(tar, size);
+                }
+                ByteStreams.skipFully(tar, padding);
+            }
+        }
+    }
+
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int n = ByteStreams.read(in, block, 0, block.length);
+        if (n == 0) {
+            return false;
+        } else if (n < block.length) {
+            throw new EOFException("Truncated tar archive");
+        }
+        return true;
+    }
+
+    private static byte[] readFully(InputStream in, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Tar entry too large: " + size + " bytes");
+        }
+        byte[] data = new byte[(int) size];
+        ByteStreams.readFully(in, data);
+        return data;
+    }
+
+    private static String tarName(byte[] header) {
+        String name = cString(header, 0, 100);
+        boolean ustar = cString(header, 257, 5).equals("ustar");
+        String prefix = ustar ? cString(header, 345, 155) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private static String cString(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long parseOctal(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '7') {
+                value = value * 8 + (b - '0');
+            } else if (b == 0 || (b == ' ' && value > 0)) {
+                break;
+            }
+        }
+        return value;
+    }
+}
@@ -1,20 +1,21 @@
 package org.monarchinitiative;
 
-import com.google.common.collect.ImmutableList;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.util.JsonFormat;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.monarchinitiative.phenol.base.PhenolRuntimeException;
-import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.phenopackets.schema.v1.Phenopacket;
 import org.phenopackets.schema.v1.core.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
 
 
@@ -25,40 +26,83 @@ import java.util.List;
  */
 public class PhenopacketImporter {
     private static final Logger logger = LoggerFactory.getLogger(PhenopacketImporter.class);
+    /** The protobuf JSON parser is immutable and thread-safe, so we share one instance. */
+    private static final JsonFormat.Parser JSON_PARSER = JsonFormat.parser();
     /** The Phenopacket that represents the individual being sequenced in the current run. */
     private final Phenopacket phenoPacket;
     /** Object representing the VCF file with variants identified in the subject of this Phenopacket. */
     private HtsFile vcfFile;
     /** Name of the proband of the Phenopacket (corresponds to the {@code id} element of the phenopacket). */
     private final String samplename;
-    /** Reference to HPO ontology */
-    private final Ontology hpo;
+    /** Resolves HPO ids to current term ids (shared by all importers of a run). */
+    private final TermResolver hpo;
+    /** Observed and negated HPO terms, resolved on first use. */
+    private TermResolver.ResolvedTerms resolvedTerms;
 
     /**
-     * Factory method to obtain a PhenopacketImporter object starting from a phenopacket in Json format
+     * Factory method to obtain a PhenopacketImporter object starting from a phenopacket in Json format.
+     * The file is streamed directly into the protobuf builder, i.e., the JSON text is parsed exactly once.
      * @param pathToJsonPhenopacketFile -- path to the phenopacket
      * @return {@link PhenopacketImporter} object corresponding to the PhenoPacket
      */
-    public static PhenopacketImporter fromJson(String pathToJsonPhenopacketFile, Ontology ontology)  {
-        JSONParser parser = new JSONParser();
+    public static PhenopacketImporter fromJson(String pathToJsonPhenopacketFile, TermResolver ontology)  {
         logger.trace("Importing Phenopacket: " + pathToJsonPhenopacketFile);
+        try (Reader reader = Files.newBufferedReader(Paths.get(pathToJsonPhenopacketFile), StandardCharsets.UTF_8)) {
+            return fromJson(reader, ontology);
+        } catch (IOException e1) {
+            throw new PhenolRuntimeException("Could not load phenopacket at " + pathToJsonPhenopacketFile + ": "
+                    + e1.getMessage(), e1);
+        }
+    }
 
+    /**
+     * Factory method to obtain a PhenopacketImporter object from the UTF-8 encoded contents of a JSON phenopacket
+     * that were already read into memory (e.g., in order to compute a hash of the file).
+     * @param json -- contents of the phenopacket file
+     * @param name -- name of the phenopacket file (used for error messages)
+     * @return {@link PhenopacketImporter} object corresponding to the PhenoPacket
+     */
+    public static PhenopacketImporter fromJson(byte[] json, String name, TermResolver ontology) {
+        logger.trace("Importing Phenopacket: " + name);
         try {
-            Object obj = parser.parse(new FileReader(pathToJsonPhenopacketFile));
-            JSONObject jsonObject = (JSONObject) obj;
-            String phenopacketJsonString = jsonObject.toJSONString();
-            Phenopacket phenopacket;
+            return new PhenopacketImporter(parseJson(json), ontology);
+        } catch (IOException e1) {
+            throw new PhenolRuntimeException("Could not load phenopacket at " + name + ": " + e1.getMessage(), e1);
+        }
+    }
+
+    /** Parse the UTF-8 encoded JSON of a phenopacket (without resolving its terms). */
+    static Phenopacket parseJson(byte[] json) throws IOException {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)) {
             Phenopacket.Builder phenoPacketBuilder = Phenopacket.newBuilder();
-            JsonFormat.parser().merge(phenopacketJsonString, phenoPacketBuilder);
-            phenopacket = phenoPacketBuilder.build();
-            return new PhenopacketImporter(phenopacket,ontology);
-        } catch (IOException | ParseException e1) {
-            e1.printStackTrace();
-            throw new RuntimeException("Could not load phenopacket at " + pathToJsonPhenopacketFile);
+            JSON_PARSER.merge(reader, phenoPacketBuilder);
+            return phenoPacketBuilder.build();
+        }
+    }
+
+    /**
+     * Factory method to obtain a PhenopacketImporter object from a phenopacket in binary protobuf encoding
+     * (a single message, i.e., not length-delimited).
+     * @param data -- the serialized phenopacket
+     * @param name -- name of the phenopacket file (used for error messages)
+     * @return {@link PhenopacketImporter} object corresponding to the PhenoPacket
+     */
+    public static PhenopacketImporter fromProtobuf(byte[] data, String name, TermResolver ontology) {
+        logger.trace("Importing Phenopacket: " + name);
+        try {
+            return new PhenopacketImporter(Phenopacket.parseFrom(data), ontology);
+        } catch (InvalidProtocolBufferException e1) {
+            throw new PhenolRuntimeException("Could not load phenopacket at " + name + ": " + e1.getMessage(), e1);
         }
     }
 
-    private PhenopacketImporter(Phenopacket ppack, Ontology ontology){
+    private static PhenopacketImporter fromJson(Reader reader, TermResolver ontology) throws IOException {
+        Phenopacket.Builder phenoPacketBuilder = Phenopacket.newBuilder();
+        JSON_PARSER.merge(reader, phenoPacketBuilder);
+        return new PhenopacketImporter(phenoPacketBuilder.build(), ontology);
+    }
+
+    private PhenopacketImporter(Phenopacket ppack, TermResolver ontology){
         this.phenoPacket=ppack;
         this.samplename = this.phenoPacket.getSubject().getId();
         this.hpo=ontology;
@@ -77,27 +121,19 @@ public class PhenopacketImporter {
 
 
 
-    public List<TermId> getHpoTerms() {
-        ImmutableList.Builder<TermId> builder = new ImmutableList.Builder<>();
-        for (PhenotypicFeature feature : phenoPacket.getPhenotypicFeaturesList()) {
-            if (feature.getNegated()) continue;
-            String id = feature.getType().getId();
-            TermId tid = TermId.of(id);
-            if (! hpo.getTermMap().containsKey(tid)) {
-                logger.error("Could not identify HPO term id {}.",tid.getValue());
-                System.err.println("[ERROR] Could not identify HPO term id " + tid.getValue() +". ");
-                System.err.println("[ERROR] Please check the input file and update to the latest hp.obo file. ");
-                throw new PhenolRuntimeException("Could not identify HPO term id: "+tid.getValue());
-            } else if (hpo.getObsoleteTermIds().contains(tid)) {
-                TermId current =  hpo.getPrimaryTermId(tid);
-                builder.add(current);
-                logger.error("Replacing obsolete HPO term id {} with current id {}.",tid.getValue(),current.getValue());
-                System.err.println("[ERROR] Replacing obsolete HPO term id " + tid.getValue() +". with current id "+current.getValue());
-            } else {
-                builder.add(tid);
-            }
+    /**
+     * Resolve the observed and the negated HPO terms of this phenopacket in a single pass over the features
+     * (the result is computed on first use and kept).
+     */
+    public TermResolver.ResolvedTerms getResolvedTerms() {
+        if (this.resolvedTerms == null) {
+            this.resolvedTerms = this.hpo.resolve(phenoPacket.getPhenotypicFeaturesList());
         }
-        return builder.build();
+        return this.resolvedTerms;
+    }
+
+    public List<TermId> getHpoTerms() {
+        return getResolvedTerms().getObserved();
     }
 
     public Gene getGene() {
@@ -109,26 +145,7 @@ public class PhenopacketImporter {
 
 
     public List<TermId> getNegatedHpoTerms() {
-        ImmutableList.Builder<TermId> builder = new ImmutableList.Builder<>();
-        for (PhenotypicFeature feature : phenoPacket.getPhenotypicFeaturesList()) {
-            if (! feature.getNegated()) continue;
-            String id = feature.getType().getId();
-            TermId tid = TermId.of(id);
-            if (! hpo.getTermMap().containsKey(tid)) {
-                logger.error("Could not identify HPO term id {}.",tid.getValue());
-                System.err.println("[ERROR] Could not identify HPO term id " + tid.getValue() +". ");
-                System.err.println("[ERROR] Please check the input file and update to the latest hp.obo file. ");
-                throw new PhenolRuntimeException("Could not identify HPO term id: "+tid.getValue());
-            } else if (hpo.getObsoleteTermIds().contains(tid)) {
-                TermId current =  hpo.getPrimaryTermId(tid);
-                builder.add(current);
-                logger.error("Replacing obsolete HPO term id {} with current id {}.",tid.getValue(),current.getValue());
-                System.err.println("[ERROR] Replacing obsolete HPO term id " + tid.getValue() +". with current id "+current.getValue());
-            } else {
-                builder.add(tid);
-            }
-        }
-        return builder.build();
+        return getResolvedTerms().getNegated();
     }
 
     /**
@@ -0,0 +1,97 @@
+package org.monarchinitiative;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the {@link PhenopacketRecord} of every phenopacket file of a run as JSON lines. The first line contains
+ * the content hash of hp.obo/phenotype.hpoa; if the ontology changes, the stored records are discarded because
+ * obsolete term ids may be resolved differently. Manifests written with another format version are also discarded.
+ * @author Peter Robinson
+ */
+final class PhenopacketManifest {
+    private static final Logger logger = LoggerFactory.getLogger(PhenopacketManifest.class);
+    /**
+     * Version 2: the table row is stored as a {@link TableRow} rather than as a LaTeX string.
+     * Version 3: the zygosity of the variants is stored.
+     */
+    private static final int FORMAT_VERSION = 3;
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+    /** Also used to store the records of {@link PartialCounts}. */
+    static final ObjectReader RECORD_READER = MAPPER.readerFor(PhenopacketRecord.class);
+    static final ObjectWriter RECORD_WRITER = MAPPER.writerFor(PhenopacketRecord.class);
+
+    private PhenopacketManifest() {
+    }
+
+    /**
+     * @param path path of the manifest file
+     * @param ontologyHash content hash of the ontology files of the current run
+     * @return map from file path to record, empty if there is no usable manifest
+     */
+    static Map<String, PhenopacketRecord> load(Path path, String ontologyHash) throws IOException {
+        Map<String, PhenopacketRecord> records = new HashMap<>();
+        if (! Files.isRegularFile(path)) {
+            return records;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            JsonNode node = header == null ? MissingNode.getInstance() : MAPPER.readTree(header);
+            if (node.path("version").asInt() != FORMAT_VERSION) {
+                logger.info("Manifest {} has an unsupported format version, ignoring it", path);
+                return records;
+            }
+            if (! node.path("ontology").asText().equals(ontologyHash)) {
+                logger.info("Manifest {} was created with another version of the ontology, ignoring it", path);
+                return records;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                PhenopacketRecord record = RECORD_READER.readValue(line);
+                records.put(record.getPath(), record);
+            }
+        }
+        return records;
+    }
+
+    static void save(Path path, String ontologyHash, Collection<PhenopacketRecord> records) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = TempFiles.create(dir, "manifest");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(MAPPER.createObjectNode()
+                        .put("version", FORMAT_VERSION)
+                        .put("ontology", ontologyHash).toString());
+                writer.write('\n');
+                for (PhenopacketRecord record : records) {
+                    writer.write(RECORD_WRITER.writeValueAsString(record));
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+}
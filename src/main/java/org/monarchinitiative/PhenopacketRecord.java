@@ -0,0 +1,138 @@
+package org.monarchinitiative;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The contribution of a single phenopacket file to the counts: the data extracted from the phenopacket
+ * together with the size, modification time and content hash of the file. Records are stored in the
+ * {@link PhenopacketManifest} so that an incremental run only needs to parse new or changed files.
+ * @author Peter Robinson
+ */
+final class PhenopacketRecord {
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    /** SHA-256 of the file contents. */
+    private final String hash;
+    private final TermId diseaseId;
+    private final String geneId;
+    /** Observed HPO terms (obsolete ids have already been replaced by the current ids). */
+    private final List<TermId> termIds;
+    private final List<TermId> negatedTermIds;
+    /** Zygosity (GENO id, or the empty string if not given) of each variant. */
+    private final List<String> zygosity;
+    /** The row of the table for this phenopacket. */
+    private final TableRow row;
+
+    PhenopacketRecord(String path, long size, long lastModified, String hash, TermId diseaseId, String geneId,
+                      List<TermId> termIds, List<TermId> negatedTermIds, List<String> zygosity, TableRow row) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+        this.diseaseId = diseaseId;
+        this.geneId = geneId;
+        this.termIds = termIds;
+        this.negatedTermIds = negatedTermIds;
+        this.zygosity = zygosity;
+        this.row = row;
+    }
+
+    @JsonCreator
+    static PhenopacketRecord fromJson(@JsonProperty("path") String path,
+                                      @JsonProperty("size") long size,
+                                      @JsonProperty("lastModified") long lastModified,
+                                      @JsonProperty("hash") String hash,
+                                      @JsonProperty("diseaseId") String diseaseId,
+                                      @JsonProperty("geneId") String geneId,
+                                      @JsonProperty("termIds") List<String> termIds,
+                                      @JsonProperty("negatedTermIds") List<String> negatedTermIds,
+                                      @JsonProperty("zygosity") List<String> zygosity,
+                                      @JsonProperty("row") TableRow row) {
+        return new PhenopacketRecord(path, size, lastModified, hash, TermId.of(diseaseId), geneId,
+                toTermIds(termIds), toTermIds(negatedTermIds),
+                zygosity == null ? ImmutableList.of() : ImmutableList.copyOf(zygosity), row);
+    }
+
+    /** @return a copy of this record for the same file contents with a new size and modification time. */
+    PhenopacketRecord withFileAttributes(long size, long lastModified) {
+        return new PhenopacketRecord(path, size, lastModified, hash, diseaseId, geneId, termIds, negatedTermIds,
+                zygosity, row);
+    }
+
+    @JsonProperty("path")
+    String getPath() {
+        return path;
+    }
+
+    @JsonProperty("size")
+    long getSize() {
+        return size;
+    }
+
+    @JsonProperty("lastModified")
+    long getLastModified() {
+        return lastModified;
+    }
+
+    @JsonProperty("hash")
+    String getHash() {
+        return hash;
+    }
+
+    TermId getDiseaseId() {
+        return diseaseId;
+    }
+
+    @JsonProperty("diseaseId")
+    String getDiseaseIdValue() {
+        return diseaseId.getValue();
+    }
+
+    @JsonProperty("geneId")
+    String getGeneId() {
+        return geneId;
+    }
+
+    List<TermId> getTermIds() {
+        return termIds;
+    }
+
+    List<TermId> getNegatedTermIds() {
+        return negatedTermIds;
+    }
+
+    @JsonProperty("termIds")
+    List<String> getTermIdValues() {
+        return toValues(termIds);
+    }
+
+    @JsonProperty("negatedTermIds")
+    List<String> getNegatedTermIdValues() {
+        return toValues(negatedTermIds);
+    }
+
+    @JsonProperty("zygosity")
+    List<String> getZygosity() {
+        return zygosity;
+    }
+
+    @JsonProperty("row")
+    TableRow getRow() {
+        return row;
+    }
+
+    private static List<TermId> toTermIds(List<String> values) {
+        return values.stream().map(TermId::of).collect(ImmutableList.toImmutableList());
+    }
+
+    private static List<String> toValues(List<TermId> tids) {
+        return tids.stream().map(TermId::getValue).collect(Collectors.toList());
+    }
+}
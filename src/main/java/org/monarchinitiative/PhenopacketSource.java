@@ -0,0 +1,97 @@
+package org.monarchinitiative;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A phenopacket found by the {@link PhenopacketDiscovery}: a JSON or binary protobuf file (optionally gzipped),
+ * an entry of a zip or tar archive, or a message of a {@link PhenopacketBundle}. The size and modification time
+ * are those of the file (or archive entry) and are used to decide whether the record of a previous run can be
+ * reused; the contents are only read if needed.
+ * @author Peter Robinson
+ */
+final class PhenopacketSource {
+    /** Absolute path of the file, or {@code <archive>!/<entry>} for an entry of an archive or bundle. */
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    /** Contents of an archive or bundle entry (read while the archive is scanned), {@code null} for files. */
+    private final byte[] contents;
+    private final Path file;
+    /** True for binary protobuf, false for JSON. */
+    private final boolean protobuf;
+
+    private PhenopacketSource(String path, long size, long lastModified, byte[] contents, Path file, boolean protobuf) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contents = contents;
+        this.file = file;
+        this.protobuf = protobuf;
+    }
+
+    static PhenopacketSource ofFile(Path file, BasicFileAttributes attributes) {
+        return new PhenopacketSource(file.toAbsolutePath().toString(), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), null, file, isProtobuf(file.getFileName().toString()));
+    }
+
+    static PhenopacketSource ofArchiveEntry(Path archive, String entryName, long lastModified, byte[] contents) {
+        return new PhenopacketSource(archive.toAbsolutePath() + "!/" + entryName, contents.length, lastModified,
+                contents, null, isProtobuf(entryName));
+    }
+
+    /**
+     * @param index position of the message in the bundle; it is zero-padded in the path so that the table rows
+     *              keep the order of the bundle
+     */
+    static PhenopacketSource ofBundleEntry(Path bundle, int index, long lastModified, byte[] contents) {
+        return new PhenopacketSource(String.format("%s!/%09d", bundle.toAbsolutePath(), index), contents.length,
+                lastModified, contents, null, true);
+    }
+
+    /** Binary phenopackets have the extension .pb (or .pb.gz). */
+    private static boolean isProtobuf(String name) {
+        return name.endsWith(".pb") || name.endsWith(".pb.gz");
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    boolean isProtobuf() {
+        return protobuf;
+    }
+
+    /** @return the JSON or protobuf encoding of the phenopacket (decompressed for .gz files and entries) */
+    byte[] read() throws IOException {
+        if (contents != null) {
+            if (! path.endsWith(".gz")) {
+                return contents;
+            }
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(contents))) {
+                return ByteStreams.toByteArray(in);
+            }
+        }
+        if (! file.getFileName().toString().endsWith(".gz")) {
+            return Files.readAllBytes(file);
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.monarchinitiative;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Output stage of a count: receives the table rows in their final order and the summary at the end.
+ * Implementations write one output format (LaTeX longtable, TSV, JSON summary); {@link AsyncReportWriter}
+ * distributes one stream of rows to several of them on a dedicated thread.
+ * Implementations are not thread-safe and expect a single producer.
+ * @author Peter Robinson
+ */
+interface ReportWriter extends Closeable {
+
+    /** Called once before the first row. */
+    void writeHeader() throws IOException;
+
+    void writeRow(TableRow row) throws IOException;
+
+    /** Called once after the last row. */
+    void writeSummary(CountSummary summary) throws IOException;
+}
@@ -0,0 +1,189 @@
+package org.monarchinitiative;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing and throughput of a counting run: number of files and bytes, latency histograms of the read, parse,
+ * resolve and aggregate steps, the time needed to load the ontology, the cache statistics of the term resolver,
+ * and heap and GC usage. The counters can be updated concurrently by all stages of a scan. A progress line can be
+ * printed periodically during the run, and the final values can be exported as JSON or CSV.
+ * @author Peter Robinson
+ */
+final class ScanMetrics {
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final double MB = 1024.0 * 1024.0;
+
+    final LatencyHistogram read = new LatencyHistogram();
+    final LatencyHistogram parse = new LatencyHistogram();
+    final LatencyHistogram resolve = new LatencyHistogram();
+    final LatencyHistogram aggregate = new LatencyHistogram();
+    /** Phenopackets that were counted (parsed or taken from the manifest). */
+    final LongAdder files = new LongAdder();
+    /** Bytes of the phenopackets that were read. */
+    final LongAdder bytes = new LongAdder();
+    /** Phenopackets whose record was taken from the manifest. */
+    final LongAdder reused = new LongAdder();
+
+    private volatile long ontologyLoadNanos;
+    private volatile long obsoleteReplacements;
+    /** Distinct HPO ids seen by the term resolver, and the lookups answered from / missing in its cache. */
+    private volatile long resolvedTermIds;
+    private volatile long resolverHits;
+    private volatile long resolverMisses;
+    private volatile long unknownDiseases;
+    private volatile long errors;
+    private long startNanos = System.nanoTime();
+    private volatile long endNanos;
+    private ScheduledExecutorService progress;
+
+    void setOntologyLoadNanos(long nanos) {
+        this.ontologyLoadNanos = nanos;
+    }
+
+    /** Set the counts that are only known at the end of the run. */
+    void setTotals(long obsoleteReplacements, long resolvedTermIds, long resolverHits, long resolverMisses,
+                   long unknownDiseases, long errors) {
+        this.obsoleteReplacements = obsoleteReplacements;
+        this.resolvedTermIds = resolvedTermIds;
+        this.resolverHits = resolverHits;
+        this.resolverMisses = resolverMisses;
+        this.unknownDiseases = unknownDiseases;
+        this.errors = errors;
+    }
+
+    /**
+     * Start the clock of the scan and, if the interval is positive, print a progress line every
+     * {@code intervalSeconds} seconds.
+     */
+    void start(long intervalSeconds, PrintStream out) {
+        this.startNanos = System.nanoTime();
+        this.endNanos = 0L;
+        if (intervalSeconds > 0) {
+            progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            progress.scheduleAtFixedRate(() -> out.println(progressLine()), intervalSeconds, intervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /** Stop the clock and the progress output. */
+    void stop() {
+        this.endNanos = System.nanoTime();
+        if (progress != null) {
+            progress.shutdownNow();
+            progress = null;
+        }
+    }
+
+    private double elapsedSeconds() {
+        long end = endNanos != 0L ? endNanos : System.nanoTime();
+        return Math.max(1L, end - startNanos) / 1e9;
+    }
+
+    String progressLine() {
+        double seconds = elapsedSeconds();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long[] gc = gcTotals();
+        return String.format("[%.0f s] %d phenopackets (%.0f/s), %.1f MB read (%.1f MB/s), heap %.0f/%.0f MB, "
+                        + "GC %d collections (%d ms)",
+                seconds, files.sum(), files.sum() / seconds, bytes.sum() / MB, bytes.sum() / MB / seconds,
+                heap.getUsed() / MB, heap.getCommitted() / MB, gc[0], gc[1]);
+    }
+
+    /** @return total number and time (ms) of garbage collections */
+    private static long[] gcTotals() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, gc.getCollectionCount());
+            time += Math.max(0L, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    Map<String, Object> toMap() {
+        double seconds = elapsedSeconds();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("elapsedSeconds", seconds);
+        map.put("ontologyLoadSeconds", ontologyLoadNanos / 1e9);
+        map.put("phenopackets", files.sum());
+        map.put("reusedFromManifest", reused.sum());
+        map.put("bytesRead", bytes.sum());
+        map.put("phenopacketsPerSecond", files.sum() / seconds);
+        map.put("bytesPerSecond", bytes.sum() / seconds);
+        map.put("obsoleteTermReplacements", obsoleteReplacements);
+        Map<String, Object> resolver = new LinkedHashMap<>();
+        resolver.put("distinctIds", resolvedTermIds);
+        resolver.put("cacheHits", resolverHits);
+        resolver.put("cacheMisses", resolverMisses);
+        map.put("termResolver", resolver);
+        map.put("unknownDiseases", unknownDiseases);
+        map.put("errors", errors);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("read", read.toMap());
+        latency.put("parse", parse.toMap());
+        latency.put("resolve", resolve.toMap());
+        latency.put("aggregate", aggregate.toMap());
+        map.put("latency", latency);
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        Map<String, Object> memory = new LinkedHashMap<>();
+        memory.put("heapUsedMB", heap.getUsed() / MB);
+        memory.put("heapCommittedMB", heap.getCommitted() / MB);
+        memory.put("heapMaxMB", heap.getMax() < 0 ? -1.0 : heap.getMax() / MB);
+        map.put("heap", memory);
+        Map<String, Object> collectors = new LinkedHashMap<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            Map<String, Object> collector = new LinkedHashMap<>();
+            collector.put("collections", gc.getCollectionCount());
+            collector.put("timeMillis", gc.getCollectionTime());
+            collectors.put(gc.getName(), collector);
+        }
+        map.put("gc", collectors);
+        return map;
+    }
+
+    /** Write the metrics as JSON if the file name ends with .json, otherwise as CSV (metric,value). */
+    void export(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            if (path.getFileName().toString().endsWith(".json")) {
+                writer.write(MAPPER.writeValueAsString(toMap()));
+                writer.write('\n');
+            } else {
+                writer.write("metric,value\n");
+                writeCsv(writer, "", toMap());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeCsv(BufferedWriter writer, String prefix, Map<String, Object> map) throws IOException {
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            String key = prefix + e.getKey().replace(',', '_').replace(' ', '_');
+            if (e.getValue() instanceof Map) {
+                writeCsv(writer, key + ".", (Map<String, Object>) e.getValue());
+            } else {
+                writer.write(key + "," + e.getValue() + "\n");
+            }
+        }
+    }
+}
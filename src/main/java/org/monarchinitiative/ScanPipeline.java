@@ -0,0 +1,212 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Staged scan of a phenopacket corpus:
+ * <ol>
+ *     <li>discovery of the phenopackets (one thread),</li>
+ *     <li>I/O: reading the files ({@code ioThreads} threads, optionally virtual threads),</li>
+ *     <li>parsing the phenopackets and resolving their terms ({@code parserThreads} threads),</li>
+ *     <li>aggregation of the records (the calling thread).</li>
+ * </ol>
+ * The stages are connected by bounded queues of batches, so a stage blocks if the next one falls behind,
+ * and slow I/O (e.g., on network storage) overlaps with parsing. If a stage fails, the remaining items are
+ * drained without being processed and the first exception is rethrown by {@link #run}.
+ * @param <T> type of the items passed from the I/O stage to the parser stage
+ * @author Peter Robinson
+ */
+final class ScanPipeline<T> {
+    private static final Logger logger = LoggerFactory.getLogger(ScanPipeline.class);
+    /** Number of items that are passed between the stages at once. */
+    static final int BATCH_SIZE = 64;
+    /** Marks the end of the stream of batches; each thread of a stage gets one. */
+    private static final List<?> END = new ArrayList<>();
+
+    /** One step of a stage, applied to each item; an item is dropped if the step returns {@code null}. */
+    interface Step<I, O> {
+        O apply(I item) throws IOException;
+    }
+
+    private final PhenopacketDiscovery discovery;
+    private final Step<PhenopacketSource, T> reader;
+    private final Step<T, PhenopacketRecord> parser;
+    private final int ioThreads;
+    private final int parserThreads;
+    private final boolean virtualIo;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    ScanPipeline(PhenopacketDiscovery discovery, Step<PhenopacketSource, T> reader, Step<T, PhenopacketRecord> parser,
+                 int ioThreads, int parserThreads, boolean virtualIo) {
+        this.discovery = discovery;
+        this.reader = reader;
+        this.parser = parser;
+        this.ioThreads = Math.max(1, ioThreads);
+        this.parserThreads = Math.max(1, parserThreads);
+        this.virtualIo = virtualIo;
+    }
+
+    /** Run the scan and pass each record to the aggregator (on the calling thread). */
+    void run(Consumer<PhenopacketRecord> aggregator) {
+        BlockingQueue<List<PhenopacketSource>> sources = new ArrayBlockingQueue<>(2 * ioThreads);
+        BlockingQueue<List<T>> loaded = new ArrayBlockingQueue<>(2 * parserThreads);
+        BlockingQueue<List<PhenopacketRecord>> records = new ArrayBlockingQueue<>(2 * parserThreads);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(platformThreads("discovery").newThread(() -> discover(sources)));
+        ThreadFactory ioFactory = virtualIo ? virtualThreads() : platformThreads("reader");
+        AtomicInteger activeReaders = new AtomicInteger(ioThreads);
+        for (int i = 0; i < ioThreads; i++) {
+            threads.add(ioFactory.newThread(() -> stage(sources, reader, loaded, activeReaders, parserThreads)));
+        }
+        AtomicInteger activeParsers = new AtomicInteger(parserThreads);
+        for (int i = 0; i < parserThreads; i++) {
+            threads.add(platformThreads("parser").newThread(() -> stage(loaded, parser, records, activeParsers, 1)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        List<PhenopacketRecord> batch;
+        while ((batch = take(records)) != END) {
+            if (failure.get() != null) {
+                continue;
+            }
+            try {
+                batch.forEach(aggregator);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PhenolRuntimeException("Interrupted while counting phenopackets");
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void discover(BlockingQueue<List<PhenopacketSource>> out) {
+        try {
+            List<PhenopacketSource> batch = new ArrayList<>(BATCH_SIZE);
+            discovery.discover(source -> {
+                batch.add(source);
+                if (batch.size() == BATCH_SIZE) {
+                    if (failure.get() != null) {
+                        throw failure.get(); // stop walking the directory
+                    }
+                    put(out, new ArrayList<>(batch));
+                    batch.clear();
+                }
+            });
+            if (! batch.isEmpty()) {
+                put(out, batch);
+            }
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            for (int i = 0; i < ioThreads; i++) {
+                put(out, end());
+            }
+        }
+    }
+
+    /**
+     * Apply a step to each item of the input batches. The last thread of a stage to finish passes one end
+     * marker to each thread of the next stage.
+     */
+    private <I, O> void stage(BlockingQueue<List<I>> in, Step<I, O> step, BlockingQueue<List<O>> out,
+                              AtomicInteger active, int downstream) {
+        try {
+            List<I> batch;
+            while ((batch = take(in)) != END) {
+                if (failure.get() != null) {
+                    continue; // keep draining so that the previous stage does not block
+                }
+                List<O> results = new ArrayList<>(batch.size());
+                try {
+                    for (I item : batch) {
+                        O result = step.apply(item);
+                        if (result != null) {
+                            results.add(result);
+                        }
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, new UncheckedIOException(e));
+                    continue;
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    continue;
+                }
+                put(out, results);
+            }
+        } finally {
+            if (active.decrementAndGet() == 0) {
+                for (int i = 0; i < downstream; i++) {
+                    put(out, end());
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> List<E> end() {
+        return (List<E>) END;
+    }
+
+    private static <E> void put(BlockingQueue<E> queue, E item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PhenolRuntimeException("Interrupted while counting phenopackets");
+        }
+    }
+
+    private static <E> E take(BlockingQueue<E> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PhenolRuntimeException("Interrupted while counting phenopackets");
+        }
+    }
+
+    private static ThreadFactory platformThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Virtual threads are available from Java 21; they are created via reflection because countpp is compiled
+     * for Java 8. On older JDKs, platform threads are used instead.
+     */
+    private static ThreadFactory virtualThreads() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not available in this JDK, using platform threads for I/O");
+            return platformThreads("reader");
+        }
+    }
+}
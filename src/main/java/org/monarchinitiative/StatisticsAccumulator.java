@@ -0,0 +1,30 @@
+package org.monarchinitiative;
+
+/**
+ * Summary statistics of a stream of non-negative integer values (e.g., the number of HPO terms per phenopacket).
+ * In contrast to Commons Math {@code DescriptiveStatistics}, implementations are not required to keep every value,
+ * and partial results obtained by different threads can be combined with {@link #merge(StatisticsAccumulator)}.
+ * Empty accumulators return {@code NaN} for the mean, the minimum, the maximum and the percentiles.
+ * @author Peter Robinson
+ */
+interface StatisticsAccumulator {
+
+    void addValue(int value);
+
+    /** Add all values of another accumulator of the same type to this one. */
+    void merge(StatisticsAccumulator other);
+
+    long getN();
+
+    double getMean();
+
+    double getMin();
+
+    double getMax();
+
+    /**
+     * @param p requested percentile, {@code 0 < p <= 100}
+     * @return the percentile, estimated in the same way as Commons Math {@code Percentile} (default estimation type)
+     */
+    double getPercentile(double p);
+}
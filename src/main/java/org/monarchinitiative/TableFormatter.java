@@ -0,0 +1,117 @@
+package org.monarchinitiative;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Normalization of disease names and LaTeX rendering of the rows of the table. Everything is appended to a
+ * buffer supplied by the caller, so that rendering a row does not create intermediate strings; normalized disease
+ * names are computed once per label and then reused (the label is taken from the phenopacket, so phenopackets with
+ * the same disease id may have different labels). Instances are not thread-safe: each thread (parser or
+ * report writer) uses its own formatter.
+ * @author Peter Robinson
+ */
+final class TableFormatter {
+    private static final String SYNDROME = "Syndrome";
+
+    /** Normalized disease name by label. */
+    private final Map<String, String> diseaseNames = new HashMap<>();
+    private final StringBuilder buffer = new StringBuilder(128);
+
+    /**
+     * @return the disease name for display: the label up to the first ';' (the OMIM label lists alternative
+     * names after it), with each word capitalized, e.g., "MARFAN SYNDROME; MFS" becomes "Marfan syndrome"
+     */
+    String normalizeDiseaseName(String label) {
+        String name = diseaseNames.get(label);
+        if (name == null) {
+            buffer.setLength(0);
+            appendDiseaseName(buffer, label);
+            name = buffer.toString();
+            diseaseNames.put(label, name);
+        }
+        return name;
+    }
+
+    /** Append the normalized disease name (see {@link #normalizeDiseaseName}) to the buffer. */
+    static void appendDiseaseName(StringBuilder sb, String label) {
+        int end = label.indexOf(';');
+        if (end <= 0) {
+            end = label.length();
+        }
+        int start = sb.length();
+        appendTitleCase(sb, label, 0, end);
+        // "Syndrome" is not capitalized
+        for (int i = sb.indexOf(SYNDROME, start); i >= 0; i = sb.indexOf(SYNDROME, i + 1)) {
+            sb.setCharAt(i, 's');
+        }
+    }
+
+    /**
+     * Append s[start, end) with the first letter of each word (after a space or hyphen) in upper case and all
+     * other letters in lower case (only ASCII letters are changed).
+     */
+    static void appendTitleCase(StringBuilder sb, CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (i == start && c != ' ' || c != ' ' && (s.charAt(i - 1) == ' ' || s.charAt(i - 1) == '-')) {
+                if (c >= 'a' && c <= 'z') {
+                    c = (char) (c - 'a' + 'A');
+                }
+            } else if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + 'a' - 'A');
+            }
+            sb.append(c);
+        }
+    }
+
+    /** Append a row of the LaTeX longtable. */
+    void appendLatexRow(StringBuilder sb, TableRow row) {
+        appendLatex(sb, row.getDiseaseName(), false);
+        sb.append(" & ");
+        appendLatex(sb, row.getGeneSymbol(), false);
+        sb.append(" & ");
+        // underscores in sample names are shown as hyphens
+        appendLatex(sb, row.getSampleName(), true);
+        sb.append(" & ").append(row.getNTerms()).append(" & ");
+        appendLatex(sb, row.getPmid(), false);
+        sb.append("\\\\ \n");
+    }
+
+    /**
+     * Append text with the LaTeX special characters escaped.
+     * @param underscoreAsHyphen write '_' as '-' rather than as an escaped underscore
+     */
+    static void appendLatex(StringBuilder sb, CharSequence s, boolean underscoreAsHyphen) {
+        if (s == null) {
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '_':
+                    sb.append(underscoreAsHyphen ? "-" : "\\_");
+                    break;
+                case '&':
+                case '%':
+                case '$':
+                case '#':
+                case '{':
+                case '}':
+                    sb.append('\\').append(c);
+                    break;
+                case '~':
+                    sb.append("\\textasciitilde{}");
+                    break;
+                case '^':
+                    sb.append("\\textasciicircum{}");
+                    break;
+                case '\\':
+                    sb.append("\\textbackslash{}");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.monarchinitiative;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One row of the supplemental table: disease, gene, proband, number of HPO terms and publication.
+ * The values are stored unformatted; each {@link ReportWriter} renders them in its own format.
+ * @author Peter Robinson
+ */
+final class TableRow {
+    /** Disease name, already normalized for display (see {@link TableFormatter#normalizeDiseaseName}). */
+    private final String diseaseName;
+    private final String geneSymbol;
+    private final String sampleName;
+    /** Number of observed and negated HPO terms. */
+    private final int nTerms;
+    private final String pmid;
+
+    @JsonCreator
+    TableRow(@JsonProperty("diseaseName") String diseaseName,
+             @JsonProperty("geneSymbol") String geneSymbol,
+             @JsonProperty("sampleName") String sampleName,
+             @JsonProperty("nTerms") int nTerms,
+             @JsonProperty("pmid") String pmid) {
+        this.diseaseName = diseaseName;
+        this.geneSymbol = geneSymbol;
+        this.sampleName = sampleName;
+        this.nTerms = nTerms;
+        this.pmid = pmid;
+    }
+
+    @JsonProperty("diseaseName")
+    String getDiseaseName() {
+        return diseaseName;
+    }
+
+    @JsonProperty("geneSymbol")
+    String getGeneSymbol() {
+        return geneSymbol;
+    }
+
+    @JsonProperty("sampleName")
+    String getSampleName() {
+        return sampleName;
+    }
+
+    @JsonProperty("nTerms")
+    int getNTerms() {
+        return nTerms;
+    }
+
+    @JsonProperty("pmid")
+    String getPmid() {
+        return pmid;
+    }
+}
@@ -0,0 +1,32 @@
+package org.monarchinitiative;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Temporary files for the output files that are written completely and then atomically moved into place
+ * (manifest, snapshot, corpus index, bundle, partial results). Unlike {@link Files#createTempFile}, which
+ * creates files that only the owner can read, the files get the default permissions of the user (umask), so
+ * that the output can be shared, e.g., the partial results of a sharded run on a batch cluster.
+ * @author Peter Robinson
+ */
+final class TempFiles {
+
+    private TempFiles() {
+    }
+
+    /** Create a new empty file in the directory (which must exist) with a name that starts with the prefix. */
+    static Path create(Path dir, String prefix) throws IOException {
+        while (true) {
+            Path tmp = dir.resolve(prefix + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                return Files.createFile(tmp);
+            } catch (FileAlreadyExistsException e) {
+                // try another name
+            }
+        }
+    }
+}
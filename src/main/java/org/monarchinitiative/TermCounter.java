@@ -0,0 +1,103 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counts occurrences of term ids. Terms of the {@link TermIndex} are counted in an {@code int} array;
+ * the rare ids that are not part of the index (e.g., a disease that is missing from phenotype.hpoa)
+ * are counted in a small map. Instances are not thread-safe; each worker keeps its own counter and
+ * the partial counts are combined with {@link #merge(TermCounter)}.
+ * @author Peter Robinson
+ */
+final class TermCounter {
+    private final TermIndex index;
+    private final int[] counts;
+    /** Counts for ids that are not part of {@link #index}. */
+    private final Map<TermId, int[]> unindexed = new HashMap<>();
+    /** Number of distinct indexed terms with a count greater than zero. */
+    private int distinctIndexed = 0;
+
+    TermCounter(TermIndex index) {
+        this.index = index;
+        this.counts = new int[index.size()];
+    }
+
+    void increment(TermId tid) {
+        add(tid, 1);
+    }
+
+    void add(TermId tid, int n) {
+        int i = index.indexOf(tid);
+        if (i >= 0) {
+            addAt(i, n);
+        } else {
+            unindexed.computeIfAbsent(tid, k -> new int[1])[0] += n;
+        }
+    }
+
+    /** Increment the count of the term with index i of the {@link TermIndex}. */
+    void incrementAt(int i) {
+        addAt(i, 1);
+    }
+
+    private void addAt(int i, int n) {
+        if (counts[i] == 0 && n > 0) {
+            distinctIndexed++;
+        }
+        counts[i] += n;
+    }
+
+    int get(TermId tid) {
+        int i = index.indexOf(tid);
+        if (i >= 0) {
+            return counts[i];
+        }
+        int[] c = unindexed.get(tid);
+        return c == null ? 0 : c[0];
+    }
+
+    /** @return number of distinct terms that were counted at least once. */
+    int size() {
+        return distinctIndexed + unindexed.size();
+    }
+
+    /** @return sum of the counts of all terms. */
+    long total() {
+        long total = 0;
+        for (int c : counts) {
+            total += c;
+        }
+        for (int[] c : unindexed.values()) {
+            total += c[0];
+        }
+        return total;
+    }
+
+    /** Call the consumer for each term with a count greater than zero. */
+    void forEach(ObjIntConsumer<TermId> consumer) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                consumer.accept(index.termId(i), counts[i]);
+            }
+        }
+        unindexed.forEach((tid, c) -> consumer.accept(tid, c[0]));
+    }
+
+    /** Add the counts of another counter (usually a partial result of another worker) to this one. */
+    void merge(TermCounter other) {
+        if (other.index == this.index) {
+            for (int i = 0; i < counts.length; i++) {
+                if (other.counts[i] > 0) {
+                    addAt(i, other.counts[i]);
+                }
+            }
+            other.unindexed.forEach((tid, c) -> add(tid, c[0]));
+        } else {
+            other.forEach(this::add);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.monarchinitiative;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the exact and the ancestor-propagated count of each HPO term as tab-separated values, sorted by
+ * decreasing propagated count. The rows of the phenopacket table are not written.
+ * @author Peter Robinson
+ */
+final class TermFrequencyReportWriter implements ReportWriter {
+    private final Writer writer;
+
+    TermFrequencyReportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeHeader() {
+        // the header is written with the summary
+    }
+
+    @Override
+    public void writeRow(TableRow row) {
+        // only the term counts are written
+    }
+
+    @Override
+    public void writeSummary(CountSummary summary) throws IOException {
+        writer.write("hpo.id\tlabel\texact\tpropagated\tfraction\n");
+        StringBuilder sb = new StringBuilder(128);
+        for (CountSummary.TermFrequency term : summary.propagatedTerms) {
+            sb.setLength(0);
+            sb.append(term.termId.getValue()).append('\t')
+                    .append(term.label).append('\t')
+                    .append(term.exact).append('\t')
+                    .append(term.propagated).append('\t')
+                    .append(String.format("%.4f", term.fraction)).append('\n');
+            writer.append(sb);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,39 @@
+package org.monarchinitiative;
+
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.*;
+
+/**
+ * Assigns a dense int index (0..n-1) to each of a fixed set of term ids, so that per-term data can
+ * be stored in primitive arrays. An index is built once (e.g., for all HPO terms or for all diseases
+ * of the annotation file) and shared by all threads; it is immutable after construction.
+ * @author Peter Robinson
+ */
+final class TermIndex {
+    private final Map<TermId, Integer> id2index;
+    private final TermId[] termIds;
+
+    TermIndex(Collection<TermId> ids) {
+        TreeSet<TermId> sorted = new TreeSet<>(ids);
+        this.termIds = sorted.toArray(new TermId[0]);
+        this.id2index = new HashMap<>(2 * termIds.length);
+        for (int i = 0; i < termIds.length; i++) {
+            id2index.put(termIds[i], i);
+        }
+    }
+
+    /** @return the index of the term, or -1 if the term is not part of this index. */
+    int indexOf(TermId tid) {
+        Integer i = id2index.get(tid);
+        return i == null ? -1 : i;
+    }
+
+    TermId termId(int index) {
+        return termIds[index];
+    }
+
+    int size() {
+        return termIds.length;
+    }
+}
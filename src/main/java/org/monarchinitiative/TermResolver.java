@@ -0,0 +1,132 @@
+package org.monarchinitiative;
+
+import com.google.common.collect.ImmutableList;
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.phenopackets.schema.v1.core.PhenotypicFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves the HPO ids used in phenopackets to current term ids. A corpus uses a few thousand distinct
+ * HPO ids millions of times, so each raw id string is checked against the {@link HpoSnapshot} only once
+ * and the result (the current id, or a marker for ids that are not in the ontology) is cached.
+ * One resolver is shared by all threads of a run.
+ * @author Peter Robinson
+ */
+final class TermResolver {
+    private static final Logger logger = LoggerFactory.getLogger(TermResolver.class);
+    /** Cached for ids that are not part of the ontology. */
+    private static final TermId UNKNOWN = TermId.of("UNKNOWN:0000000");
+
+    private final HpoSnapshot hpo;
+    private final ConcurrentHashMap<String, TermId> cache = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    /** Number of times an obsolete id was replaced by the current id. */
+    private final LongAdder replacements = new LongAdder();
+
+    TermResolver(HpoSnapshot hpo) {
+        this.hpo = hpo;
+    }
+
+    /** The observed and the negated terms of a phenopacket. */
+    static final class ResolvedTerms {
+        private final List<TermId> observed;
+        private final List<TermId> negated;
+
+        private ResolvedTerms(List<TermId> observed, List<TermId> negated) {
+            this.observed = observed;
+            this.negated = negated;
+        }
+
+        List<TermId> getObserved() {
+            return observed;
+        }
+
+        List<TermId> getNegated() {
+            return negated;
+        }
+    }
+
+    /**
+     * Resolve the observed and negated terms of a list of phenotypic features in a single pass.
+     * @throws PhenolRuntimeException if a term id is not part of the ontology
+     */
+    ResolvedTerms resolve(List<PhenotypicFeature> features) {
+        ImmutableList.Builder<TermId> observed = new ImmutableList.Builder<>();
+        ImmutableList.Builder<TermId> negated = new ImmutableList.Builder<>();
+        for (PhenotypicFeature feature : features) {
+            TermId tid = resolve(feature.getType().getId());
+            if (feature.getNegated()) {
+                negated.add(tid);
+            } else {
+                observed.add(tid);
+            }
+        }
+        return new ResolvedTerms(observed.build(), negated.build());
+    }
+
+    /**
+     * @param id an HPO id such as HP:0001250
+     * @return the current (primary) id of the term
+     * @throws PhenolRuntimeException if the id is not part of the ontology
+     */
+    TermId resolve(String id) {
+        TermId tid = cache.get(id);
+        if (tid != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            tid = cache.computeIfAbsent(id, this::lookup);
+        }
+        if (tid == UNKNOWN) {
+            System.err.println("[ERROR] Could not identify HPO term id " + id +". ");
+            System.err.println("[ERROR] Please check the input file and update to the latest hp.obo file. ");
+            throw new PhenolRuntimeException("Could not identify HPO term id: "+id);
+        }
+        if (! tid.getValue().equals(id)) {
+            replacements.increment();
+        }
+        return tid;
+    }
+
+    private TermId lookup(String id) {
+        TermId tid = TermId.of(id);
+        if (! hpo.containsTerm(tid)) {
+            logger.error("Could not identify HPO term id {}.",tid.getValue());
+            return UNKNOWN;
+        } else if (hpo.isObsolete(tid)) {
+            TermId current =  hpo.getPrimaryTermId(tid);
+            logger.error("Replacing obsolete HPO term id {} with current id {}.",tid.getValue(),current.getValue());
+            System.err.println("[ERROR] Replacing obsolete HPO term id " + tid.getValue() +". with current id "+current.getValue());
+            return current;
+        } else {
+            return tid;
+        }
+    }
+
+    /** @return number of lookups that were answered from the cache. */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /** @return number of lookups of ids that were not yet in the cache. */
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return number of times an obsolete id was resolved to the current id. */
+    long getReplacements() {
+        return replacements.sum();
+    }
+
+    /** @return number of distinct ids in the cache. */
+    int size() {
+        return cache.size();
+    }
+}
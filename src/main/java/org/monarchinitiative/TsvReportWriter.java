@@ -0,0 +1,43 @@
+package org.monarchinitiative;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the rows as tab-separated values with a header line.
+ * @author Peter Robinson
+ */
+final class TsvReportWriter implements ReportWriter {
+    private final Writer writer;
+    private final StringBuilder sb = new StringBuilder(128);
+
+    TsvReportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeHeader() throws IOException {
+        writer.write("disease\tgene\tproband\tn.hpo.terms\tpublication\n");
+    }
+
+    @Override
+    public void writeRow(TableRow row) throws IOException {
+        sb.setLength(0);
+        sb.append(row.getDiseaseName()).append('\t')
+                .append(row.getGeneSymbol()).append('\t')
+                .append(row.getSampleName()).append('\t')
+                .append(row.getNTerms()).append('\t')
+                .append(row.getPmid()).append('\n');
+        writer.append(sb);
+    }
+
+    @Override
+    public void writeSummary(CountSummary summary) {
+        // the summary is not part of the table
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
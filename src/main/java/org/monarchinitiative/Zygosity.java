@@ -0,0 +1,35 @@
+package org.monarchinitiative;
+
+/**
+ * Zygosity of a variant (GENO term), stored as a small code in the {@link CorpusIndex}.
+ * @author Peter Robinson
+ */
+enum Zygosity {
+    /** Any other or missing GENO term. */
+    OTHER(null, 0),
+    HETEROZYGOUS("GENO:0000135", 1),
+    HOMOZYGOUS("GENO:0000136", 2),
+    HEMIZYGOUS("GENO:0000134", 1);
+
+    private final String genoId;
+    /** Number of pathogenic alleles of a variant with this zygosity. */
+    private final int alleles;
+
+    Zygosity(String genoId, int alleles) {
+        this.genoId = genoId;
+        this.alleles = alleles;
+    }
+
+    int getAlleles() {
+        return alleles;
+    }
+
+    static Zygosity of(String genoId) {
+        for (Zygosity zygosity : values()) {
+            if (zygosity.genoId != null && zygosity.genoId.equals(genoId)) {
+                return zygosity;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,94 @@
+package org.monarchinitiative;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Check that {@link IntHistogram} gives the same statistics as the {@link DescriptiveStatistics} it replaced.
+ * @author Peter Robinson
+ */
+class IntHistogramTest {
+    private static final double[] PERCENTILES = {0.5, 1, 10, 25, 33.3, 50, 75, 90, 99, 100};
+    private static final double EPSILON = 1e-9;
+
+    private static void assertSameStatistics(int... values) {
+        IntHistogram histogram = new IntHistogram();
+        DescriptiveStatistics expected = new DescriptiveStatistics();
+        for (int v : values) {
+            histogram.addValue(v);
+            expected.addValue(v);
+        }
+        assertEquals(expected.getN(), histogram.getN());
+        assertEquals(expected.getMean(), histogram.getMean(), EPSILON);
+        assertEquals(expected.getMin(), histogram.getMin(), EPSILON);
+        assertEquals(expected.getMax(), histogram.getMax(), EPSILON);
+        for (double p : PERCENTILES) {
+            assertEquals(expected.getPercentile(p), histogram.getPercentile(p), EPSILON, "percentile " + p);
+        }
+    }
+
+    @Test
+    void testEmpty() {
+        IntHistogram histogram = new IntHistogram();
+        DescriptiveStatistics expected = new DescriptiveStatistics();
+        assertEquals(0, histogram.getN());
+        assertTrue(Double.isNaN(expected.getMean()) && Double.isNaN(histogram.getMean()));
+        assertTrue(Double.isNaN(expected.getMin()) && Double.isNaN(histogram.getMin()));
+        assertTrue(Double.isNaN(expected.getMax()) && Double.isNaN(histogram.getMax()));
+        assertTrue(Double.isNaN(expected.getPercentile(0.5)) && Double.isNaN(histogram.getPercentile(0.5)));
+        assertTrue(Double.isNaN(expected.getPercentile(50)) && Double.isNaN(histogram.getPercentile(50)));
+    }
+
+    @Test
+    void testOneValue() {
+        assertSameStatistics(7);
+        assertSameStatistics(0);
+    }
+
+    @Test
+    void testTwoValues() {
+        assertSameStatistics(3, 12);
+        assertSameStatistics(5, 5);
+        assertSameStatistics(40, 1);
+    }
+
+    @Test
+    void testRandomValues() {
+        Random random = new Random(42);
+        for (int size : new int[]{3, 10, 101, 1000, 10000}) {
+            int[] values = new int[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(60);
+            }
+            assertSameStatistics(values);
+        }
+    }
+
+    @Test
+    void testMerge() {
+        Random random = new Random(7);
+        IntHistogram merged = new IntHistogram();
+        IntHistogram other = new IntHistogram();
+        DescriptiveStatistics expected = new DescriptiveStatistics();
+        for (int i = 0; i < 500; i++) {
+            int v = random.nextInt(100);
+            (i % 3 == 0 ? merged : other).addValue(v);
+            expected.addValue(v);
+        }
+        merged.merge(other);
+        assertEquals(expected.getN(), merged.getN());
+        assertEquals(expected.getMean(), merged.getMean(), EPSILON);
+        assertEquals(expected.getPercentile(50), merged.getPercentile(50), EPSILON);
+    }
+
+    @Test
+    void testNegativeValue() {
+        assertThrows(IllegalArgumentException.class, () -> new IntHistogram().addValue(-1));
+    }
+}
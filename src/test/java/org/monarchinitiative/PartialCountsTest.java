@@ -0,0 +1,205 @@
+package org.monarchinitiative;
+
+import com.google.protobuf.util.JsonFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.phenol.base.PhenolRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.phenopackets.schema.v1.Phenopacket;
+import org.phenopackets.schema.v1.core.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A corpus that is counted in shards and merged with {@link PartialCounts#merge} must give the same counts,
+ * table and summary as a single run over the whole corpus.
+ * @author Peter Robinson
+ */
+class PartialCountsTest {
+    private static final int SHARDS = 3;
+    private static final int CORPUS_SIZE = 60;
+    /** Disease id, label and HPO terms of the diseases of the annotation fragment that are used for the corpus. */
+    private static final String[][] DISEASES = {
+            {"OMIM:154700", "MARFAN SYNDROME; MFS", "HP:0001166", "HP:0000098", "HP:0002650"},
+            {"OMIM:602447", "COHEN SYNDROME; COH1", "HP:0001249", "HP:0000252", "HP:0001252"},
+            {"OMIM:300958", "Intellectual developmental disorder, X-linked; MRX", "HP:0001249", "HP:0001263"},
+            {"OMIM:220400", "Jervell and Lange-Nielsen syndrome 1", "HP:0000365", "HP:0001629"},
+            {"OMIM:601200", "Sporadic visual disorder", "HP:0000505", "HP:0003745"},
+            {"OMIM:156200", "Heterogeneous short stature", "HP:0004322", "HP:0000958"}
+    };
+    private static final String[] ZYGOSITY = {"GENO:0000135", "GENO:0000136", "GENO:0000134"};
+
+    @TempDir
+    Path dir;
+    private Path hpo;
+    private Path annotations;
+    private Path corpus;
+    private Path snapshots;
+
+    @BeforeEach
+    void setUp() throws IOException, URISyntaxException {
+        hpo = resource("hp-fragment.obo");
+        annotations = resource("phenotype-fragment.hpoa");
+        corpus = dir.resolve("corpus");
+        snapshots = dir.resolve("snapshots");
+        writeCorpus(corpus, CORPUS_SIZE, new Random(42));
+    }
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Paths.get(PartialCountsTest.class.getResource("/" + name).toURI());
+    }
+
+    /** Write random phenopackets of the {@link #DISEASES} as JSON files. */
+    private static void writeCorpus(Path dir, int size, Random random) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < size; i++) {
+            String[] disease = DISEASES[random.nextInt(DISEASES.length)];
+            int gene = 1 + random.nextInt(8);
+            Phenopacket.Builder builder = Phenopacket.newBuilder()
+                    .setId(String.format("PMID:%d-Author-2019-GENE%d-Family_%d", 1000 + random.nextInt(5), gene, i))
+                    .setSubject(Individual.newBuilder().setId(String.format("Family_%d_II:1", i)))
+                    .addGenes(Gene.newBuilder().setId("HGNC:" + gene).setSymbol("GENE" + gene))
+                    .addDiseases(Disease.newBuilder()
+                            .setTerm(OntologyClass.newBuilder().setId(disease[0]).setLabel(disease[1])));
+            for (int t = 2; t < disease.length; t++) {
+                if (random.nextInt(4) > 0) {
+                    builder.addPhenotypicFeatures(PhenotypicFeature.newBuilder()
+                            .setType(OntologyClass.newBuilder().setId(disease[t]))
+                            .setNegated(random.nextInt(5) == 0));
+                }
+            }
+            builder.addVariants(Variant.newBuilder()
+                    .setZygosity(OntologyClass.newBuilder().setId(ZYGOSITY[random.nextInt(ZYGOSITY.length)])));
+            try (Writer writer = Files.newBufferedWriter(dir.resolve(String.format("p%03d.json", i)),
+                    StandardCharsets.UTF_8)) {
+                JsonFormat.printer().appendTo(builder.build(), writer);
+            }
+        }
+    }
+
+    /** Run countpp with the test ontology on the corpus, or run the merge command if the arguments start with it. */
+    private void countpp(String... args) throws IOException {
+        List<String> arguments = new ArrayList<>();
+        boolean merge = args.length > 0 && args[0].equals(MergeOptions.COMMAND);
+        if (merge) {
+            arguments.add(MergeOptions.COMMAND);
+        }
+        arguments.addAll(Arrays.asList("--hpo", hpo.toString(), "-a", annotations.toString(),
+                "--snapshot-dir", snapshots.toString()));
+        if (! merge) {
+            arguments.addAll(Arrays.asList("-p", corpus.toString()));
+        }
+        arguments.addAll(Arrays.asList(args).subList(merge ? 1 : 0, args.length));
+        CountPhenoP.main(arguments.toArray(new String[0]));
+    }
+
+    private Path partial(int shard, int shards) throws IOException {
+        Path path = dir.resolve(String.format("part-%d-of-%d.jsonl", shard, shards));
+        countpp("--shard", shard + "/" + shards, "--partial", path.toString(),
+                "-o", dir.resolve("shard.tex").toString());
+        return path;
+    }
+
+    private List<Path> partials() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            paths.add(partial(i, SHARDS));
+        }
+        return paths;
+    }
+
+    private static Map<TermId, Integer> toMap(TermCounter counter) {
+        Map<TermId, Integer> map = new HashMap<>();
+        counter.forEach(map::put);
+        return map;
+    }
+
+    private static List<String> records(PhenopacketCounts counts) throws IOException {
+        List<String> records = new ArrayList<>();
+        for (PhenopacketRecord record : counts.records.values()) {
+            records.add(PhenopacketManifest.RECORD_WRITER.writeValueAsString(record));
+        }
+        return records;
+    }
+
+    @Test
+    void testMergedCountsEqualSingleScan() throws IOException {
+        CountPhenoP cpp = new CountPhenoP(hpo.toString(), new PhenopacketDiscovery(corpus.toString()),
+                annotations.toString(), 1, 1, false, snapshots.toString(), null);
+        PhenopacketCounts expected = cpp.scan();
+        PhenopacketCounts merged = PartialCounts.merge(partials(), cpp.getOntology());
+        assertEquals(CORPUS_SIZE, expected.records.size());
+        assertEquals(toMap(expected.disease2count), toMap(merged.disease2count));
+        assertEquals(toMap(expected.hpo2count), toMap(merged.hpo2count));
+        assertEquals(toMap(expected.propagated), toMap(merged.propagated));
+        assertEquals(expected.genes, merged.genes);
+        assertEquals(expected.genesByInheritance, merged.genesByInheritance);
+        assertArrayEquals(((IntHistogram) expected.termsPerPhenopacket).getCounts(),
+                ((IntHistogram) merged.termsPerPhenopacket).getCounts());
+        assertArrayEquals(((IntHistogram) expected.negatedTermsPerPhenopacket).getCounts(),
+                ((IntHistogram) merged.negatedTermsPerPhenopacket).getCounts());
+        assertEquals(records(expected), records(merged));
+    }
+
+    @Test
+    void testMergedOutputEqualsSingleRun() throws IOException {
+        countpp("-o", dir.resolve("all.tex").toString(), "--tsv", dir.resolve("all.tsv").toString(),
+                "--json", dir.resolve("all.json").toString());
+        List<String> merge = new ArrayList<>(Arrays.asList(MergeOptions.COMMAND,
+                "-o", dir.resolve("merged.tex").toString(), "--tsv", dir.resolve("merged.tsv").toString(),
+                "--json", dir.resolve("merged.json").toString()));
+        for (Path partial : partials()) {
+            merge.add(partial.toString());
+        }
+        countpp(merge.toArray(new String[0]));
+        for (String extension : new String[]{"tex", "tsv", "json"}) {
+            assertEquals(new String(Files.readAllBytes(dir.resolve("all." + extension)), StandardCharsets.UTF_8),
+                    new String(Files.readAllBytes(dir.resolve("merged." + extension)), StandardCharsets.UTF_8),
+                    extension);
+        }
+    }
+
+    @Test
+    void testShardGivenTwice() throws IOException {
+        Path first = partial(0, SHARDS);
+        Path copy = dir.resolve("copy.jsonl");
+        Files.copy(first, copy);
+        HpoSnapshot ontology = HpoSnapshot.load(hpo.toString(), annotations.toString(), snapshots.toString());
+        assertThrows(PhenolRuntimeException.class, () -> PartialCounts.merge(Arrays.asList(first, copy), ontology));
+    }
+
+    @Test
+    void testOtherNumberOfShards() throws IOException {
+        List<Path> paths = Arrays.asList(partial(0, SHARDS), partial(1, SHARDS + 1));
+        HpoSnapshot ontology = HpoSnapshot.load(hpo.toString(), annotations.toString(), snapshots.toString());
+        assertThrows(PhenolRuntimeException.class, () -> PartialCounts.merge(paths, ontology));
+    }
+
+    @Test
+    void testOtherOntology() throws IOException {
+        HpoSnapshot ontology = HpoSnapshot.load(hpo.toString(), annotations.toString(), snapshots.toString());
+        Path path = dir.resolve("other-ontology.jsonl");
+        PartialCounts.save(path, "not-the-ontology-hash", 0, 1, new PhenopacketCounts(ontology));
+        assertThrows(PhenolRuntimeException.class,
+                () -> PartialCounts.merge(Collections.singletonList(path), ontology));
+    }
+
+    @Test
+    void testInvalidShard() throws IOException {
+        HpoSnapshot ontology = HpoSnapshot.load(hpo.toString(), annotations.toString(), snapshots.toString());
+        Path path = dir.resolve("invalid-shard.jsonl");
+        PartialCounts.save(path, ontology.getContentHash(), SHARDS, SHARDS, new PhenopacketCounts(ontology));
+        assertThrows(PhenolRuntimeException.class,
+                () -> PartialCounts.merge(Collections.singletonList(path), ontology));
+    }
+}
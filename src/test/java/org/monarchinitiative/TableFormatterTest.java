@@ -0,0 +1,168 @@
+package org.monarchinitiative;
+
+import com.google.protobuf.util.JsonFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.phenopackets.schema.v1.Phenopacket;
+import org.phenopackets.schema.v1.core.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link TableFormatter} must give the same disease names and rows as the string operations it replaced, and
+ * escape the LaTeX special characters.
+ * @author Peter Robinson
+ */
+class TableFormatterTest {
+    private static final String[] LABELS = {
+            "MARFAN SYNDROME; MFS",
+            "SHPRINTZEN-GOLDBERG SYNDROME; SGS",
+            "Intellectual developmental disorder, X-linked; MRX",
+            "Lujan-Fryns syndrome",
+            "Syndrome syndrome SYNDROME",
+            "NOONAN SYNDROME-LIKE DISORDER",
+            "Epileptic encephalopathy, early infantile, 2",
+            "double  space ",
+            ";leading semicolon",
+            "no semicolon at all",
+            "ÄRZTE syndrome",
+            ""
+    };
+
+    @TempDir
+    Path dir;
+
+    /** The disease name as it was computed before {@link TableFormatter}. */
+    private static String legacyDiseaseName(String label) {
+        String diseaseName = label;
+        int i = diseaseName.indexOf(";");
+        if (i > 0) {
+            diseaseName = diseaseName.substring(0, i);
+        }
+        diseaseName = legacyConvert(diseaseName);
+        return diseaseName.replace("Syndrome", "syndrome");
+    }
+
+    private static String legacyConvert(String str) {
+        char[] ch = str.toCharArray();
+        for (int i = 0; i < str.length(); i++) {
+            if (i == 0 && ch[i] != ' ' || ch[i] != ' ' && (ch[i - 1] == ' ' || ch[i - 1] == '-')) {
+                if (ch[i] >= 'a' && ch[i] <= 'z') {
+                    ch[i] = (char) (ch[i] - 'a' + 'A');
+                }
+            } else if (ch[i] >= 'A' && ch[i] <= 'Z') {
+                ch[i] = (char) (ch[i] + 'a' - 'A');
+            }
+        }
+        return new String(ch);
+    }
+
+    private static String latex(String s, boolean underscoreAsHyphen) {
+        StringBuilder sb = new StringBuilder();
+        TableFormatter.appendLatex(sb, s, underscoreAsHyphen);
+        return sb.toString();
+    }
+
+    @Test
+    void testDiseaseNamesAsBefore() {
+        TableFormatter formatter = new TableFormatter();
+        for (String label : LABELS) {
+            StringBuilder sb = new StringBuilder("prefix ");
+            TableFormatter.appendDiseaseName(sb, label);
+            assertEquals("prefix " + legacyDiseaseName(label), sb.toString(), label);
+            assertEquals(legacyDiseaseName(label), formatter.normalizeDiseaseName(label), label);
+            assertEquals(legacyConvert(label), CountPhenoP.convert(label), label);
+        }
+        // memoized names are returned for the label they were computed for
+        for (String label : LABELS) {
+            assertEquals(legacyDiseaseName(label), formatter.normalizeDiseaseName(label), label);
+        }
+    }
+
+    @Test
+    void testLatexEscaping() {
+        assertEquals("A \\& B", latex("A & B", false));
+        assertEquals("50\\%", latex("50%", false));
+        assertEquals("a\\_b", latex("a_b", false));
+        assertEquals("a-b", latex("a_b", true));
+        assertEquals("\\#1", latex("#1", false));
+        assertEquals("\\{x\\}", latex("{x}", false));
+        assertEquals("\\$", latex("$", false));
+        assertEquals("\\textasciitilde{}\\textasciicircum{}\\textbackslash{}", latex("~^\\", false));
+        assertEquals("Plain text, 1-2 (3)", latex("Plain text, 1-2 (3)", false));
+        assertEquals("", latex(null, false));
+    }
+
+    @Test
+    void testRowAsBefore() {
+        TableRow row = new TableRow("Marfan syndrome", "FBN1", "Family_1_II_1", 12, "PMID:123");
+        StringBuilder sb = new StringBuilder();
+        new TableFormatter().appendLatexRow(sb, row);
+        String legacy = String.format("%s & %s & %s & %d & %s\\\\ \n", "Marfan syndrome", "FBN1",
+                "Family_1_II_1".replaceAll("_", "-"), 12, "PMID:123");
+        assertEquals(legacy, sb.toString());
+    }
+
+    @Test
+    void testRowWithSpecialCharacters() {
+        TableRow row = new TableRow("Deafness & blindness", "GENE_1", "Case#3_{a}", 2, "PMID:1%");
+        StringBuilder sb = new StringBuilder();
+        new TableFormatter().appendLatexRow(sb, row);
+        assertEquals("Deafness \\& blindness & GENE\\_1 & Case\\#3-\\{a\\} & 2 & PMID:1\\%\\\\ \n", sb.toString());
+    }
+
+    /**
+     * Each row has the label of its own phenopacket, also if two disease ids share one label or one disease id
+     * is labeled differently in two phenopackets, with one or several parser threads.
+     */
+    @Test
+    void testLabelsOfEachPhenopacket() throws IOException, URISyntaxException {
+        String[][] packets = {
+                {"OMIM:154700", "MARFAN SYNDROME; MFS"},
+                {"OMIM:154700", "Marfan-like disorder; MLD"},
+                {"OMIM:182212", "MARFAN SYNDROME; MFS"},
+                {"OMIM:182212", "SHPRINTZEN-GOLDBERG SYNDROME; SGS"},
+                {"OMIM:602447", "COHEN SYNDROME; COH1"},
+                {"OMIM:154700", "MARFAN SYNDROME; MFS"}
+        };
+        Path corpus = dir.resolve("corpus");
+        Files.createDirectories(corpus);
+        for (int i = 0; i < packets.length; i++) {
+            Phenopacket phenopacket = Phenopacket.newBuilder()
+                    .setId("PMID:" + (100 + i) + "-Author-2019")
+                    .setSubject(Individual.newBuilder().setId("Family_" + i))
+                    .addGenes(Gene.newBuilder().setId("HGNC:" + i).setSymbol("GENE" + i))
+                    .addDiseases(Disease.newBuilder()
+                            .setTerm(OntologyClass.newBuilder().setId(packets[i][0]).setLabel(packets[i][1])))
+                    .addPhenotypicFeatures(PhenotypicFeature.newBuilder()
+                            .setType(OntologyClass.newBuilder().setId("HP:0001249")))
+                    .build();
+            try (Writer writer = Files.newBufferedWriter(corpus.resolve(String.format("p%d.json", i)),
+                    StandardCharsets.UTF_8)) {
+                JsonFormat.printer().appendTo(phenopacket, writer);
+            }
+        }
+        String hpo = Paths.get(getClass().getResource("/hp-fragment.obo").toURI()).toString();
+        String annotations = Paths.get(getClass().getResource("/phenotype-fragment.hpoa").toURI()).toString();
+        for (int threads : new int[]{1, 4}) {
+            CountPhenoP cpp = new CountPhenoP(hpo, new PhenopacketDiscovery(corpus.toString()), annotations,
+                    threads, 1, false, dir.resolve("snapshots").toString(), null);
+            PhenopacketCounts counts = cpp.scan();
+            assertEquals(packets.length, counts.records.size());
+            for (int i = 0; i < packets.length; i++) {
+                PhenopacketRecord record = counts.records.get(corpus.resolve(String.format("p%d.json", i))
+                        .toAbsolutePath().toString());
+                assertEquals(legacyDiseaseName(packets[i][1]), record.getRow().getDiseaseName(),
+                        "phenopacket " + i + " with " + threads + " threads");
+            }
+        }
+    }
+}